@@ -1,159 +1,157 @@
 package project;
 
-import java.util.Arrays;
-
 public class BasicTester {
 	public static void main(String[] args) {
 		MachineModel model = new MachineModel(()->{});
 		for(int i = 0; i < Memory.DATA_SIZE; i++)
 			model.setData(i, 3*i);		
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 		Instruction instr = new Instruction((byte)0,0);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("NOP");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b00001001,0);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("NOT");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b00011000,12);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("LOD direct addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b00011011,12);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("LOD immediate addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b00011101,3);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("LOD indirect addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b00100001,3);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("STO direct addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b00100100,2);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("STO indirect addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b00101000,12);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("ADD direct addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b00101011,12);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("ADD immediate addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b00101101,4);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("ADD indirect addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b00110000,12);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("SUB direct addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b00110011,12);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("SUB immediate addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b00110101,4);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("SUB indirect addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b00111001,12);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("MUL direct addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b00111010,12);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("MUL immediate addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b00111100,4);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("MUL indirect addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01000001,12);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("DIV direct addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01000010,12);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("DIV immediate addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01000100,4);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("DIV indirect addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01001000,12);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("AND direct addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01001011,12);
 		Instruction.checkParity(instr);
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("AND immediate addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01001000,12);
 		Instruction.checkParity(instr);
@@ -161,7 +159,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("AND direct addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01001011,12);
 		Instruction.checkParity(instr);
@@ -169,7 +167,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("AND immediate addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01001000,0);
 		Instruction.checkParity(instr);
@@ -177,7 +175,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("AND direct addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01001011,0);
 		Instruction.checkParity(instr);
@@ -185,7 +183,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("AND immediate addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01010011,5);
 		Instruction.checkParity(instr);
@@ -193,7 +191,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("JUMP immediate addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01010000,25);
 		Instruction.checkParity(instr);
@@ -201,7 +199,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("JUMP direct addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01010101,10);
 		Instruction.checkParity(instr);
@@ -209,7 +207,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("JUMP indirect addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01010110,11);
 		Instruction.checkParity(instr);
@@ -217,7 +215,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("JUMP indirect addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01011010,5);
 		Instruction.checkParity(instr);
@@ -225,7 +223,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("JMPZ immediate addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01011001,25);
 		Instruction.checkParity(instr);
@@ -233,7 +231,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("JMPZ direct addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01011100,10);
 		Instruction.checkParity(instr);
@@ -241,7 +239,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("JMPZ indirect addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01011111,11);
 		Instruction.checkParity(instr);
@@ -249,7 +247,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("JMPZ indirect addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01011010,5);
 		Instruction.checkParity(instr);
@@ -257,7 +255,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("JMPZ immediate addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01011001,25);
 		Instruction.checkParity(instr);
@@ -265,7 +263,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("JMPZ direct addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01011100,10);
 		Instruction.checkParity(instr);
@@ -273,7 +271,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("JMPZ indirect addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01011111,11);
 		Instruction.checkParity(instr);
@@ -281,7 +279,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("JMPZ indirect addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01100000,10);
 		Instruction.checkParity(instr);
@@ -289,7 +287,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("CMPL indirect addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01100000,10);
 		Instruction.checkParity(instr);
@@ -298,7 +296,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("CMPL indirect addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01101001,10);
 		Instruction.checkParity(instr);
@@ -306,7 +304,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("CMPZ indirect addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01101001,10);
 		Instruction.checkParity(instr);
@@ -315,7 +313,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("CMPZ indirect addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 		instr = new Instruction((byte)0b01101001,10);
 		Instruction.checkParity(instr);
@@ -324,7 +322,7 @@ public class BasicTester {
 		model.ACTION.get(instr.opcode/8).accept(instr);
 		System.out.println("CMPZ indirect addressing");
 		System.out.println("Acc: " + model.getAccum() + ", PC: " + model.getPC());
-		System.out.println(Arrays.toString(model.getData(0,20)));
+		System.out.println(model.getDataView(0, 20));
 
 
 		try {
@@ -0,0 +1,575 @@
+package project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Compiles the program in code memory into a hidden JVM class, so that HotSpot
+//can JIT the Pippin program itself. The class has one method
+//	static long run(int[] regs, Memory memory, long maxSteps)
+//with a label per instruction and a switch on pc for indirect jumps. regs
+//holds accum, pc and a halted flag; they are written back on every exit and
+//before any exception leaves the method, which also leaves the steps run
+//before the fault in regs[3] (so maxSteps must fit in an int). Instructions
+//that would fault without a data access (bad parity, illegal flags, unknown
+//opcodes, jumps out of the program) are not compiled: run returns with pc at
+//the instruction and the caller lets the interpreter execute it.
+class BytecodeCompiler {
+	static final MethodType RUN_TYPE = MethodType.methodType(long.class, int[].class, Memory.class, long.class);
+	private static final String CLASS_NAME = "project/CompiledProgram";
+	private static final String MEMORY = "project/Memory";
+	private static final String DIVIDE = "project/DivideByZeroException";
+
+	// locals of the run method
+	private static final int REGS = 0;
+	private static final int MEM = 1;
+	private static final int BUDGET = 2;
+	private static final int ACC = 4;
+	private static final int PC = 5;
+	private static final int STEPS = 6;
+	private static final int TMP = 8;
+	private static final int EXC = 9;
+
+	private final ConstantPool pool = new ConstantPool();
+	private final Code code = new Code();
+	private final int getData;
+	private final int setData;
+
+	private BytecodeCompiler() {
+		getData = pool.methodRef(MEMORY, "getData", "(I)I");
+		setData = pool.methodRef(MEMORY, "setData", "(II)V");
+	}
+
+	//Compiles code memory [0, programSize] and returns a handle of RUN_TYPE,
+	//or null if the program is too large for a single JVM method
+	static MethodHandle compile(Memory memory) {
+		BytecodeCompiler compiler = new BytecodeCompiler();
+		byte[] bytes = compiler.assemble(memory);
+		if (bytes == null) return null;
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+			return lookup.findStatic(lookup.lookupClass(), "run", RUN_TYPE);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Compiled program could not be defined", e);
+		}
+	}
+
+	private byte[] assemble(Memory memory) {
+		int n = Math.min(memory.getProgramSize() + 1, memory.getCodeSize());
+		if (n <= 0) return null;
+		Label[] labels = new Label[n + 1];
+		for (int i = 0; i <= n; i++) labels[i] = new Label();
+		Label dispatch = new Label();
+		Label exit = new Label();
+
+		code.aload(REGS);
+		code.iconst(0);
+		code.op(0x2e); // iaload
+		code.store(ACC);
+		code.aload(REGS);
+		code.iconst(1);
+		code.op(0x2e);
+		code.store(PC);
+		code.op(0x09); // lconst_0
+		code.op(0x37); code.op(STEPS); // lstore
+		int tryStart = code.size();
+
+		code.bind(dispatch);
+		code.load(PC);
+		code.tableswitch(labels, n, exit);
+
+		for (int i = 0; i < n; i++) {
+			code.bind(labels[i]);
+			code.iconst(i);
+			code.store(PC);
+			int op = memory.hasCode(i) ? Decoder.decode(memory.getOpcode(i)) : Decoder.OTHER;
+			int arg = memory.getOpArg(i);
+			if (!compilable(op, i, arg, n)) {
+				code.jump(0xa7, exit); // goto
+				continue;
+			}
+			code.op(0x16); code.op(STEPS); // lload
+			code.op(0x16); code.op(BUDGET);
+			code.op(0x94); // lcmp
+			code.jump(0x9c, exit); // ifge
+			code.op(0x16); code.op(STEPS);
+			code.op(0x0a); // lconst_1
+			code.op(0x61); // ladd
+			code.op(0x37); code.op(STEPS);
+			body(op, i, arg, labels, dispatch, exit);
+		}
+		code.bind(labels[n]);
+		code.iconst(n);
+		code.store(PC);
+		int tryEnd = code.size();
+
+		code.bind(exit);
+		writeBack();
+		code.op(0x16); code.op(STEPS);
+		code.op(0xad); // lreturn
+
+		int handler = code.size();
+		code.op(0x3a); code.op(EXC); // astore
+		writeBack();
+		code.aload(REGS);
+		code.iconst(3);
+		code.op(0x16); code.op(STEPS);
+		code.op(0x0a);
+		code.op(0x65); // lsub: the faulting instruction did not complete
+		code.op(0x88); // l2i
+		code.op(0x4f);
+		code.aload(EXC);
+		code.op(0xbf); // athrow
+
+		if (!code.resolve()) return null;
+		return classFile(tryStart, tryEnd, handler);
+	}
+
+	private static boolean compilable(int op, int i, int arg, int n) {
+		if (op == Decoder.BAD_PARITY || op == Decoder.BAD_FLAGS || op == Decoder.OTHER) return false;
+		int target;
+		if (op == Decoder.JUMP_RELATIVE || op == Decoder.JMPZ_RELATIVE) target = i + arg;
+		else if (op == Decoder.JUMP_ABSOLUTE || op == Decoder.JMPZ_ABSOLUTE) target = arg;
+		else return true;
+		return target >= 0 && target < n;
+	}
+
+	private void body(int op, int i, int arg, Label[] labels, Label dispatch, Label exit) {
+		switch (op) {
+		case Decoder.NOP:
+			break;
+		case Decoder.NOT:
+			code.load(ACC);
+			bool(0x9a); // ifne
+			code.store(ACC);
+			break;
+		case Decoder.HALT:
+			code.aload(REGS);
+			code.iconst(2);
+			code.iconst(1);
+			code.op(0x4f); // iastore
+			code.jump(0xa7, exit);
+			break;
+		case Decoder.LOD_DIRECT:
+		case Decoder.LOD_IMMEDIATE:
+		case Decoder.LOD_INDIRECT:
+			operand(op - Decoder.LOD_DIRECT, arg);
+			code.store(ACC);
+			break;
+		case Decoder.STO_DIRECT:
+			code.aload(MEM);
+			code.iconst(arg);
+			code.load(ACC);
+			code.invoke(setData);
+			break;
+		case Decoder.STO_INDIRECT:
+			code.aload(MEM);
+			operand(0, arg);
+			code.load(ACC);
+			code.invoke(setData);
+			break;
+		case Decoder.ADD_DIRECT:
+		case Decoder.ADD_IMMEDIATE:
+		case Decoder.ADD_INDIRECT:
+			arithmetic(op - Decoder.ADD_DIRECT, arg, 0x60); // iadd
+			break;
+		case Decoder.SUB_DIRECT:
+		case Decoder.SUB_IMMEDIATE:
+		case Decoder.SUB_INDIRECT:
+			arithmetic(op - Decoder.SUB_DIRECT, arg, 0x64); // isub
+			break;
+		case Decoder.MUL_DIRECT:
+		case Decoder.MUL_IMMEDIATE:
+		case Decoder.MUL_INDIRECT:
+			arithmetic(op - Decoder.MUL_DIRECT, arg, 0x68); // imul
+			break;
+		case Decoder.DIV_DIRECT:
+		case Decoder.DIV_IMMEDIATE:
+		case Decoder.DIV_INDIRECT: {
+			operand(op - Decoder.DIV_DIRECT, arg);
+			code.store(TMP);
+			Label ok = new Label();
+			code.load(TMP);
+			code.jump(0x9a, ok); // ifne
+			code.newObject(pool.classRef(DIVIDE));
+			code.op(0x59); // dup
+			code.ldc(pool.string("Cannot divide by zero."));
+			code.invokeSpecial(pool.methodRef(DIVIDE, "<init>", "(Ljava/lang/String;)V"));
+			code.op(0xbf); // athrow
+			code.bind(ok);
+			code.load(ACC);
+			code.load(TMP);
+			code.op(0x6c); // idiv
+			code.store(ACC);
+			break;
+		}
+		case Decoder.AND_DIRECT: {
+			Label isFalse = new Label();
+			Label done = new Label();
+			code.load(ACC);
+			code.jump(0x99, isFalse); // ifeq
+			operand(0, arg);
+			code.jump(0x99, isFalse);
+			code.iconst(1);
+			code.jump(0xa7, done);
+			code.bind(isFalse);
+			code.iconst(0);
+			code.bind(done);
+			code.store(ACC);
+			break;
+		}
+		case Decoder.AND_IMMEDIATE:
+			if (arg == 0) {
+				code.iconst(0);
+			} else {
+				code.load(ACC);
+				bool(0x99); // ifeq
+			}
+			code.store(ACC);
+			break;
+		case Decoder.JUMP_RELATIVE:
+		case Decoder.JUMP_ABSOLUTE:
+		case Decoder.JUMP_INDIRECT_RELATIVE:
+		case Decoder.JUMP_INDIRECT_ABSOLUTE:
+			jump(op - Decoder.JUMP_RELATIVE, i, arg, labels, dispatch);
+			break;
+		case Decoder.JMPZ_RELATIVE:
+		case Decoder.JMPZ_ABSOLUTE:
+		case Decoder.JMPZ_INDIRECT_RELATIVE:
+		case Decoder.JMPZ_INDIRECT_ABSOLUTE:
+			code.load(ACC);
+			code.jump(0x9a, labels[i + 1]); // ifne
+			jump(op - Decoder.JMPZ_RELATIVE, i, arg, labels, dispatch);
+			break;
+		case Decoder.CMPL:
+			operand(0, arg);
+			bool(0x9c); // ifge
+			code.store(ACC);
+			break;
+		case Decoder.CMPZ:
+			operand(0, arg);
+			bool(0x9a); // ifne
+			code.store(ACC);
+			break;
+		}
+	}
+
+	//Pushes the direct (0), immediate (1) or indirect (2) operand
+	private void operand(int mode, int arg) {
+		if (mode == 1) {
+			code.iconst(arg);
+			return;
+		}
+		code.aload(MEM);
+		if (mode == 2) code.aload(MEM);
+		code.iconst(arg);
+		code.invoke(getData);
+		if (mode == 2) code.invoke(getData);
+	}
+
+	private void arithmetic(int mode, int arg, int opcode) {
+		code.load(ACC);
+		operand(mode, arg);
+		code.op(opcode);
+		code.store(ACC);
+	}
+
+	//Replaces the int on the stack by 0 if the branch is taken and 1 if not
+	private void bool(int branch) {
+		Label isFalse = new Label();
+		Label done = new Label();
+		code.jump(branch, isFalse);
+		code.iconst(1);
+		code.jump(0xa7, done);
+		code.bind(isFalse);
+		code.iconst(0);
+		code.bind(done);
+	}
+
+	//Relative (0), absolute (1), indirect relative (2) or indirect absolute (3) jump
+	private void jump(int mode, int i, int arg, Label[] labels, Label dispatch) {
+		if (mode == 0) {
+			code.jump(0xa7, labels[i + arg]);
+		} else if (mode == 1) {
+			code.jump(0xa7, labels[arg]);
+		} else {
+			if (mode == 2) code.load(PC);
+			operand(0, arg);
+			if (mode == 2) code.op(0x60);
+			code.store(PC);
+			code.jump(0xa7, dispatch);
+		}
+	}
+
+	private void writeBack() {
+		code.aload(REGS);
+		code.iconst(0);
+		code.load(ACC);
+		code.op(0x4f);
+		code.aload(REGS);
+		code.iconst(1);
+		code.load(PC);
+		code.op(0x4f);
+	}
+
+	private byte[] classFile(int tryStart, int tryEnd, int handler) {
+		int thisClass = pool.classRef(CLASS_NAME);
+		int superClass = pool.classRef("java/lang/Object");
+		int name = pool.utf8("run");
+		int descriptor = pool.utf8("([I" + "L" + MEMORY + ";J)J");
+		int codeAttribute = pool.utf8("Code");
+		byte[] body = code.bytes();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(50); // no stack map frames needed before Java 7
+			pool.write(out);
+			out.writeShort(0x0030); // final, super
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(0); // interfaces
+			out.writeShort(0); // fields
+			out.writeShort(1); // methods
+			out.writeShort(0x0009); // public static
+			out.writeShort(name);
+			out.writeShort(descriptor);
+			out.writeShort(1);
+			out.writeShort(codeAttribute);
+			out.writeInt(12 + body.length + 8);
+			out.writeShort(6); // max stack
+			out.writeShort(EXC + 1); // max locals
+			out.writeInt(body.length);
+			out.write(body);
+			out.writeShort(1); // exception table
+			out.writeShort(tryStart);
+			out.writeShort(tryEnd);
+			out.writeShort(handler);
+			out.writeShort(0); // any exception
+			out.writeShort(0); // code attributes
+			out.writeShort(0); // class attributes
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static class Label {
+		private int position = -1;
+	}
+
+	//Method body with branch offsets patched once every label is bound
+	private class Code {
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		private final List<Label> targets = new ArrayList<>();
+		private final List<int[]> branches = new ArrayList<>(); // {opcode position, offset position, width}
+		private byte[] patched;
+
+		int size() {
+			return out.size();
+		}
+
+		void op(int b) {
+			out.write(b);
+		}
+
+		void u2(int v) {
+			out.write(v >> 8);
+			out.write(v);
+		}
+
+		void u4(int v) {
+			u2(v >> 16);
+			u2(v);
+		}
+
+		void bind(Label label) {
+			label.position = out.size();
+		}
+
+		void load(int local) {
+			op(0x15); // iload
+			op(local);
+		}
+
+		void aload(int local) {
+			op(0x19);
+			op(local);
+		}
+
+		void store(int local) {
+			op(0x36); // istore
+			op(local);
+		}
+
+		void iconst(int v) {
+			if (v >= -1 && v <= 5) {
+				op(0x03 + v);
+			} else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) {
+				op(0x10); // bipush
+				op(v);
+			} else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) {
+				op(0x11); // sipush
+				u2(v);
+			} else {
+				ldc(pool.integer(v));
+			}
+		}
+
+		void ldc(int index) {
+			op(0x13); // ldc_w
+			u2(index);
+		}
+
+		void invoke(int method) {
+			op(0xb6); // invokevirtual
+			u2(method);
+		}
+
+		void invokeSpecial(int method) {
+			op(0xb7);
+			u2(method);
+		}
+
+		void newObject(int type) {
+			op(0xbb);
+			u2(type);
+		}
+
+		void jump(int opcode, Label target) {
+			int at = out.size();
+			op(opcode);
+			reference(at, target, 2);
+			u2(0);
+		}
+
+		void tableswitch(Label[] cases, int n, Label otherwise) {
+			int at = out.size();
+			op(0xaa);
+			while (out.size() % 4 != 0) op(0);
+			reference(at, otherwise, 4);
+			u4(0);
+			u4(0);
+			u4(n - 1);
+			for (int i = 0; i < n; i++) {
+				reference(at, cases[i], 4);
+				u4(0);
+			}
+		}
+
+		private void reference(int at, Label target, int width) {
+			targets.add(target);
+			branches.add(new int[] {at, out.size(), width});
+		}
+
+		//Patches the branch offsets; false if one does not fit its instruction
+		boolean resolve() {
+			if (out.size() > 65535) return false;
+			byte[] bytes = out.toByteArray();
+			for (int k = 0; k < branches.size(); k++) {
+				int[] branch = branches.get(k);
+				int offset = targets.get(k).position - branch[0];
+				if (branch[2] == 2) {
+					if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) return false;
+					bytes[branch[1]] = (byte) (offset >> 8);
+					bytes[branch[1] + 1] = (byte) offset;
+				} else {
+					for (int b = 0; b < 4; b++) bytes[branch[1] + b] = (byte) (offset >> (24 - 8*b));
+				}
+			}
+			patched = bytes;
+			return true;
+		}
+
+		byte[] bytes() {
+			return patched;
+		}
+	}
+
+	private static class ConstantPool {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+		private final Map<String, Integer> entries = new HashMap<>();
+		private int count = 1;
+
+		int utf8(String s) {
+			Integer index = entries.get("U" + s);
+			if (index != null) return index;
+			try {
+				out.writeByte(1);
+				out.writeUTF(s);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			return add("U" + s);
+		}
+
+		int integer(int v) {
+			Integer index = entries.get("I" + v);
+			if (index != null) return index;
+			entry(3, v);
+			return add("I" + v);
+		}
+
+		int string(String s) {
+			int text = utf8(s);
+			Integer index = entries.get("S" + s);
+			if (index != null) return index;
+			entry(8, text);
+			return add("S" + s);
+		}
+
+		int classRef(String name) {
+			int text = utf8(name);
+			Integer index = entries.get("C" + name);
+			if (index != null) return index;
+			entry(7, text);
+			return add("C" + name);
+		}
+
+		int methodRef(String owner, String name, String type) {
+			int ownerIndex = classRef(owner);
+			int nameIndex = utf8(name);
+			int typeIndex = utf8(type);
+			String key = "N" + name + type;
+			Integer nameAndType = entries.get(key);
+			if (nameAndType == null) {
+				entry(12, nameIndex << 16 | typeIndex);
+				nameAndType = add(key);
+			}
+			key = "M" + owner + "." + name + type;
+			Integer index = entries.get(key);
+			if (index != null) return index;
+			entry(10, ownerIndex << 16 | nameAndType);
+			return add(key);
+		}
+
+		//Class and string entries hold one index, the others four bytes
+		private void entry(int tag, int value) {
+			try {
+				out.writeByte(tag);
+				if (tag == 7 || tag == 8) out.writeShort(value);
+				else out.writeInt(value);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		private int add(String key) {
+			entries.put(key, count);
+			return count++;
+		}
+
+		void write(DataOutputStream to) throws IOException {
+			to.writeShort(count);
+			to.write(bytes.toByteArray());
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package project;
+
+import java.lang.invoke.MethodHandle;
+
+//Runs the program as a hidden class made by BytecodeCompiler. The class is
+//compiled again whenever code memory changes; instructions it does not
+//compile are executed by the interpreter in MachineModel.
+class BytecodeEngine implements ExecutionEngine {
+	private final MachineModel model;
+	private final int[] regs = new int[4];
+	private MethodHandle program;
+	private int compiledVersion = -1;
+	
+	BytecodeEngine(MachineModel model) {
+		this.model = model;
+	}
+	
+	//Uses a program compiled elsewhere, e.g. in the background by TieredEngine
+	void install(MethodHandle compiled, int version) {
+		program = compiled;
+		compiledVersion = version;
+	}
+	
+	boolean isCompiled() {
+		return program != null && compiledVersion == model.getMemory().getCodeVersion();
+	}
+	
+	public long execute(long maxSteps) {
+		Memory memory = model.getMemory();
+		if (compiledVersion != memory.getCodeVersion()) {
+			program = BytecodeCompiler.compile(memory);
+			compiledVersion = memory.getCodeVersion();
+		}
+		if (program == null) return model.interpret(maxSteps);
+		long steps = 0;
+		while (steps < maxSteps) {
+			regs[0] = model.getAccum();
+			regs[1] = model.getPC();
+			regs[2] = 0;
+			try {
+				steps += (long) program.invokeExact(regs, memory, Math.min(maxSteps - steps, Integer.MAX_VALUE));
+			} catch (RuntimeException | Error e) {
+				model.setAccum(regs[0]);
+				model.setPC(regs[1]);
+				model.fault(steps + regs[3]);
+				model.halt();
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException(e);
+			}
+			model.setAccum(regs[0]);
+			model.setPC(regs[1]);
+			if (regs[2] != 0) {
+				model.halt();
+				break;
+			}
+			if (steps < maxSteps) {
+				try {
+					steps += model.interpret(1);
+				} catch (RuntimeException e) {
+					model.fault(steps);
+					throw e;
+				}
+				if (model.isHalted()) break;
+			}
+		}
+		return steps;
+	}
+}
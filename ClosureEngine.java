@@ -0,0 +1,279 @@
+package project;
+
+//Runs the program as basic blocks of pre-bound lambdas. A block is compiled
+//the first time execution reaches its first instruction: each micro-op is
+//turned into a lambda with its argument, addressing mode and the rest of the
+//block already captured, and the chain ends with the jump or HALT that sets
+//the next pc. This is much cheaper to build than BytecodeCompiler and runs a
+//block without any decoding. Every lambda that can fault stores its own pc
+//first, so a fault leaves pc at the faulting instruction. Instructions that
+//cannot be compiled, and blocks longer than the remaining step budget, are
+//left to the interpreter.
+//A block runs as one chain of nested calls, so straight-line code longer than
+//MAX_BLOCK is split into blocks that fall through to each other.
+class ClosureEngine implements ExecutionEngine {
+	static final int MAX_BLOCK = 256;
+	private final MachineModel model;
+	private final Registers regs = new Registers();
+	private Block[] blocks = new Block[0];
+	private int compiledVersion = -1;
+
+	ClosureEngine(MachineModel model) {
+		this.model = model;
+	}
+
+	static class Registers {
+		int accum;
+		int pc;
+		boolean halted;
+		// instructions run by a TraceEngine trace before it was left
+		int exit;
+		// whether a guard left the trace before it came back to its header
+		boolean sideExit;
+	}
+
+	interface Op {
+		void run(Registers r);
+	}
+
+	static class Block {
+		final Op entry;
+		final int length;
+
+		Block(Op entry, int length) {
+			this.entry = entry;
+			this.length = length;
+		}
+	}
+
+	public long execute(long maxSteps) {
+		Memory memory = model.getMemory();
+		if (compiledVersion != memory.getCodeVersion()) {
+			blocks = new Block[memory.getCodeSize()];
+			compiledVersion = memory.getCodeVersion();
+		}
+		regs.accum = model.getAccum();
+		regs.pc = model.getPC();
+		regs.halted = false;
+		long steps = 0;
+		while (steps < maxSteps) {
+			Block block = block(memory, regs.pc);
+			if (block == null || block.length > maxSteps - steps) {
+				model.setAccum(regs.accum);
+				model.setPC(regs.pc);
+				try {
+					steps += model.interpret(block == null ? 1 : maxSteps - steps);
+				} catch (RuntimeException e) {
+					model.fault(steps);
+					throw e;
+				}
+				if (model.isHalted()) return steps;
+				regs.accum = model.getAccum();
+				regs.pc = model.getPC();
+				continue;
+			}
+			int start = regs.pc;
+			try {
+				block.entry.run(regs);
+			} catch (RuntimeException e) {
+				model.setAccum(regs.accum);
+				model.setPC(regs.pc);
+				model.fault(steps + regs.pc - start);
+				model.halt();
+				throw e;
+			}
+			steps += block.length;
+			if (regs.halted) {
+				model.setAccum(regs.accum);
+				model.setPC(regs.pc);
+				model.halt();
+				return steps;
+			}
+		}
+		model.setAccum(regs.accum);
+		model.setPC(regs.pc);
+		return steps;
+	}
+
+	//The block starting at pc, or null if its first instruction is not compiled
+	private Block block(Memory memory, int pc) {
+		if (pc < 0 || pc >= blocks.length) return null;
+		Block block = blocks[pc];
+		if (block == null) {
+			block = compile(memory, pc);
+			blocks[pc] = block;
+		}
+		return block.length == 0 ? null : block;
+	}
+
+	//Number of instructions in the block starting at start: up to and
+	//including its jump or HALT, stopping before anything not compilable,
+	//and no more than MAX_BLOCK
+	static int blockLength(Memory memory, int start) {
+		int end = start;
+		while (end < memory.getCodeSize() && end - start < MAX_BLOCK && memory.hasCode(end)) {
+			int op = memory.getOp(end);
+			if (op == Decoder.BAD_PARITY || op == Decoder.BAD_FLAGS || op == Decoder.OTHER) break;
+			end++;
+			if (isTerminator(op)) break;
+		}
+		return end - start;
+	}
+
+	private static boolean isTerminator(int op) {
+		return op == Decoder.HALT || (op >= Decoder.JUMP_RELATIVE && op <= Decoder.JMPZ_INDIRECT_ABSOLUTE);
+	}
+
+	static Block compile(Memory memory, int start) {
+		int end = start + blockLength(memory, start);
+		boolean terminated = end > start && isTerminator(memory.getOp(end - 1));
+		int fallThrough = end;
+		Op chain = terminated ? null : r -> r.pc = fallThrough;
+		for (int pc = end - 1; pc >= start; pc--) {
+			chain = closure(memory, memory.getOp(pc), memory.getOpArg(pc), pc, chain);
+		}
+		return new Block(chain, end - start);
+	}
+
+	static Op closure(Memory memory, int op, int arg, int pc, Op next) {
+		int following = pc + 1;
+		int relative = pc + arg;
+		switch (op) {
+		case Decoder.NOP: return r -> next.run(r);
+		case Decoder.NOT: return r -> {
+			r.accum = r.accum == 0 ? 1 : 0;
+			next.run(r);
+		};
+		case Decoder.HALT: return r -> {
+			r.pc = pc;
+			r.halted = true;
+		};
+		case Decoder.LOD_DIRECT: return r -> {
+			r.pc = pc;
+			r.accum = memory.getData(arg);
+			next.run(r);
+		};
+		case Decoder.LOD_IMMEDIATE: return r -> {
+			r.accum = arg;
+			next.run(r);
+		};
+		case Decoder.LOD_INDIRECT: return r -> {
+			r.pc = pc;
+			r.accum = memory.getData(memory.getData(arg));
+			next.run(r);
+		};
+		case Decoder.STO_DIRECT: return r -> {
+			r.pc = pc;
+			memory.setData(arg, r.accum);
+			next.run(r);
+		};
+		case Decoder.STO_INDIRECT: return r -> {
+			r.pc = pc;
+			memory.setData(memory.getData(arg), r.accum);
+			next.run(r);
+		};
+		case Decoder.ADD_DIRECT: return r -> {
+			r.pc = pc;
+			r.accum += memory.getData(arg);
+			next.run(r);
+		};
+		case Decoder.ADD_IMMEDIATE: return r -> {
+			r.accum += arg;
+			next.run(r);
+		};
+		case Decoder.ADD_INDIRECT: return r -> {
+			r.pc = pc;
+			r.accum += memory.getData(memory.getData(arg));
+			next.run(r);
+		};
+		case Decoder.SUB_DIRECT: return r -> {
+			r.pc = pc;
+			r.accum -= memory.getData(arg);
+			next.run(r);
+		};
+		case Decoder.SUB_IMMEDIATE: return r -> {
+			r.accum -= arg;
+			next.run(r);
+		};
+		case Decoder.SUB_INDIRECT: return r -> {
+			r.pc = pc;
+			r.accum -= memory.getData(memory.getData(arg));
+			next.run(r);
+		};
+		case Decoder.MUL_DIRECT: return r -> {
+			r.pc = pc;
+			r.accum *= memory.getData(arg);
+			next.run(r);
+		};
+		case Decoder.MUL_IMMEDIATE: return r -> {
+			r.accum *= arg;
+			next.run(r);
+		};
+		case Decoder.MUL_INDIRECT: return r -> {
+			r.pc = pc;
+			r.accum *= memory.getData(memory.getData(arg));
+			next.run(r);
+		};
+		case Decoder.DIV_DIRECT: return r -> {
+			r.pc = pc;
+			r.accum = divide(r.accum, memory.getData(arg));
+			next.run(r);
+		};
+		case Decoder.DIV_IMMEDIATE: return r -> {
+			r.pc = pc;
+			r.accum = divide(r.accum, arg);
+			next.run(r);
+		};
+		case Decoder.DIV_INDIRECT: return r -> {
+			r.pc = pc;
+			r.accum = divide(r.accum, memory.getData(memory.getData(arg)));
+			next.run(r);
+		};
+		case Decoder.AND_DIRECT: return r -> {
+			r.pc = pc;
+			r.accum = r.accum != 0 && memory.getData(arg) != 0 ? 1 : 0;
+			next.run(r);
+		};
+		case Decoder.AND_IMMEDIATE: return r -> {
+			r.accum = r.accum != 0 && arg != 0 ? 1 : 0;
+			next.run(r);
+		};
+		case Decoder.JUMP_RELATIVE: return r -> r.pc = relative;
+		case Decoder.JUMP_ABSOLUTE: return r -> r.pc = arg;
+		case Decoder.JUMP_INDIRECT_RELATIVE: return r -> {
+			r.pc = pc;
+			r.pc = pc + memory.getData(arg);
+		};
+		case Decoder.JUMP_INDIRECT_ABSOLUTE: return r -> {
+			r.pc = pc;
+			r.pc = memory.getData(arg);
+		};
+		case Decoder.JMPZ_RELATIVE: return r -> r.pc = r.accum == 0 ? relative : following;
+		case Decoder.JMPZ_ABSOLUTE: return r -> r.pc = r.accum == 0 ? arg : following;
+		case Decoder.JMPZ_INDIRECT_RELATIVE: return r -> {
+			r.pc = pc;
+			r.pc = r.accum == 0 ? pc + memory.getData(arg) : following;
+		};
+		case Decoder.JMPZ_INDIRECT_ABSOLUTE: return r -> {
+			r.pc = pc;
+			r.pc = r.accum == 0 ? memory.getData(arg) : following;
+		};
+		case Decoder.CMPL: return r -> {
+			r.pc = pc;
+			r.accum = memory.getData(arg) < 0 ? 1 : 0;
+			next.run(r);
+		};
+		case Decoder.CMPZ: return r -> {
+			r.pc = pc;
+			r.accum = memory.getData(arg) == 0 ? 1 : 0;
+			next.run(r);
+		};
+		default: throw new IllegalArgumentException("No closure for micro-op " + op);
+		}
+	}
+
+	private static int divide(int accum, int divisor) {
+		if (divisor == 0) throw new DivideByZeroException("Cannot divide by zero.");
+		return accum / divisor;
+	}
+}
@@ -0,0 +1,49 @@
+package project;
+
+//A read-only window onto cells min to max - 1 of a machine's code memory.
+//Nothing is copied and no Instruction objects are made unless getInstruction
+//is called; every read sees the live cell. Use MachineModel.getCode(min, max)
+//for a copy.
+public class CodeView {
+	private final Memory memory;
+	private final int min;
+	private final int size;
+
+	CodeView(Memory memory, int min, int max) {
+		if (min < 0 || min > max || max > memory.getCodeSize()) {
+			throw new ArrayIndexOutOfBoundsException("Range " + min + " to " + max + " out of bounds for length " + memory.getCodeSize());
+		}
+		this.memory = memory;
+		this.min = min;
+		this.size = max - min;
+	}
+
+	//Whether an instruction has been loaded into cell min + index
+	public boolean hasCode(int index) {
+		return memory.hasCode(cell(index));
+	}
+	//The opcode byte of cell min + index, 0 if it is empty
+	public byte getOpcode(int index) {
+		return memory.getOpcode(cell(index));
+	}
+	//The argument of cell min + index, 0 if it is empty
+	public int getArg(int index) {
+		return memory.getOpArg(cell(index));
+	}
+	//Cell min + index as a new Instruction, or null if it is empty
+	public Instruction getInstruction(int index) {
+		return memory.getCode(cell(index));
+	}
+	public int size() {
+		return size;
+	}
+	//The address of the first cell
+	public int getStart() {
+		return min;
+	}
+
+	private int cell(int index) {
+		if (index < 0 || index >= size) throw DataStore.outOfBounds(index, size);
+		return min + index;
+	}
+}
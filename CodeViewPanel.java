@@ -19,18 +19,19 @@ import javax.swing.border.TitledBorder;
 import project.Instruction;
 import project.Loader;
 import project.MachineModel;
-import project.Memory;
 
 public class CodeViewPanel {
 	private MachineModel model;
 	private JScrollPane scroller;
-	private JTextField[] codeBinHex = new JTextField[Memory.CODE_SIZE];
-	private JTextField[] codeText = new JTextField[Memory.CODE_SIZE];
+	private JTextField[] codeBinHex;
+	private JTextField[] codeText;
 	private int previousColor = -1;
 	private Instruction instr;
 	
 	public CodeViewPanel(MachineModel m) {
 		model = m;
+		codeBinHex = new JTextField[m.getCodeSize()];
+		codeText = new JTextField[m.getCodeSize()];
 	}
 	
 	public JComponent createCodeDisplay() {
@@ -57,7 +58,7 @@ public class CodeViewPanel {
 		 innerPanel.add(textPanel, BorderLayout.CENTER);
 		 innerPanel.add(hexPanel, BorderLayout.LINE_END);
 		 
-		 for (int i = 0; i < Memory.CODE_SIZE; i++) {
+		 for (int i = 0; i < model.getCodeSize(); i++) {
 			 numPanel.add(new JLabel(i+": ", JLabel.RIGHT));
 			 codeText[i] = new JTextField(10);
 			 codeBinHex[i] = new JTextField(12);
@@ -81,29 +82,29 @@ public class CodeViewPanel {
 			codeBinHex[previousColor].setBackground(Color.YELLOW);
 			codeText[previousColor].setBackground(Color.YELLOW);
 		} else if("Clear".equals(arg)) {
-			for(int i = 0; i < Memory.CODE_SIZE; i++) {
+			for(int i = 0; i < model.getCodeSize(); i++) {
 				codeText[i].setText("");
 				codeBinHex[i].setText("");
 			}
-			if(previousColor >= 0 && previousColor < Memory.CODE_SIZE) {
+			if(previousColor >= 0 && previousColor < model.getCodeSize()) {
 				codeText[previousColor].setBackground(Color.WHITE);
 				codeBinHex[previousColor].setBackground(Color.WHITE);
 			}
 			previousColor = -1;
 		}
-		if(this.previousColor >= 0 && previousColor < Memory.CODE_SIZE) {
+		if(this.previousColor >= 0 && previousColor < model.getCodeSize()) {
 			codeText[previousColor].setBackground(Color.WHITE);
 			codeBinHex[previousColor].setBackground(Color.WHITE);
 		}
 		previousColor = model.getPC();
-		if(this.previousColor >= 0 && previousColor < Memory.CODE_SIZE) {
+		if(this.previousColor >= 0 && previousColor < model.getCodeSize()) {
 			codeText[previousColor].setBackground(Color.YELLOW);
 			codeBinHex[previousColor].setBackground(Color.YELLOW);
 		}
 		if(scroller != null && instr != null && model!= null) {
 			JScrollBar bar= scroller.getVerticalScrollBar();
 			int pc = model.getPC();
-			if(pc >= 0 && pc < Memory.CODE_SIZE && codeBinHex[pc] != null) {
+			if(pc >= 0 && pc < model.getCodeSize() && codeBinHex[pc] != null) {
 				Rectangle bounds = codeBinHex[pc].getBounds();
 				bar.setValue(Math.max(0, bounds.y - 15*bounds.height));
 			}
@@ -0,0 +1,78 @@
+package project;
+
+import java.nio.IntBuffer;
+
+//Where Memory keeps data memory. Every store behaves like an int[] of size()
+//cells that start at 0: an index outside it throws an
+//ArrayIndexOutOfBoundsException, which the engines and RunResult rely on.
+interface DataStore {
+	int get(int index);
+
+	void set(int index, int value);
+
+	//Sets the cells from start on to all of values, as one bulk copy where
+	//the store allows
+	default void setAll(int start, IntBuffer values) {
+		int length = values.remaining();
+		checkRange(start, length, size());
+		for (int i = 0; i < length; i++) {
+			set(start + i, values.get(values.position() + i));
+		}
+	}
+
+	int size();
+
+	//Sets every cell back to 0
+	void clear();
+
+	//Whether machines other than the owner use these cells, so that resetting
+	//the owner must leave them alone (see Memory.clearData)
+	default boolean isShared() {
+		return false;
+	}
+
+	//An independent store with the same cells. Stores that can share their
+	//cells with the fork until one of them writes do so.
+	DataStore fork();
+
+	//The store a machine keeps once it is restored to source's cells: a fork
+	//of source, or this store with source copied into it if it cannot be
+	//replaced
+	default DataStore restore(DataStore source) {
+		return source.fork();
+	}
+
+	//Cells min to max - 1, with 0 for any past the end, as Arrays.copyOfRange
+	default int[] copy(int min, int max) {
+		int[] cells = range(min, max, size());
+		for (int i = min; i < max && i < size(); i++) {
+			cells[i - min] = get(i);
+		}
+		return cells;
+	}
+
+	//The array for a copy of cells min to max - 1, after the checks made by
+	//Arrays.copyOfRange
+	static int[] range(int min, int max, int size) {
+		if (min < 0 || min > size) throw outOfBounds(min, size);
+		if (min > max) throw new IllegalArgumentException(min + " > " + max);
+		return new int[max - min];
+	}
+
+	//Sets length cells from start on to value
+	default void fill(int start, int length, int value) {
+		checkRange(start, length, size());
+		for (int i = start; i < start + length; i++) set(i, value);
+	}
+
+	//Throws unless cells start to start + length - 1 are all in a store of size
+	static void checkRange(int start, int length, int size) {
+		if (start < 0 || start > size) throw outOfBounds(start, size);
+		if (length > size - start) throw outOfBounds(start + length - 1, size);
+	}
+
+	//The exception an int[] of the given size throws for index
+	static ArrayIndexOutOfBoundsException outOfBounds(int index, int size) {
+		return new ArrayIndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+	}
+}
@@ -0,0 +1,42 @@
+package project;
+
+//A read-only window onto cells min to max - 1 of a machine's data memory.
+//Nothing is copied: every get reads the live cell, so the view shows writes
+//made after it was taken. Use MachineModel.getData(min, max) for a copy.
+public class DataView {
+	private final Memory memory;
+	private final int min;
+	private final int size;
+
+	DataView(Memory memory, int min, int max) {
+		if (min < 0 || min > max || max > memory.getDataSize()) {
+			throw new ArrayIndexOutOfBoundsException("Range " + min + " to " + max + " out of bounds for length " + memory.getDataSize());
+		}
+		this.memory = memory;
+		this.min = min;
+		this.size = max - min;
+	}
+
+	//Cell min + index
+	public int get(int index) {
+		if (index < 0 || index >= size) throw DataStore.outOfBounds(index, size);
+		return memory.getData(min + index);
+	}
+	public int size() {
+		return size;
+	}
+	//The address of the first cell
+	public int getStart() {
+		return min;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder b = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) b.append(", ");
+			b.append(get(i));
+		}
+		return b.append("]").toString();
+	}
+}
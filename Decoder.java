@@ -0,0 +1,94 @@
+package project;
+
+//Translates instructions into micro-ops, one for each opcode and addressing
+//mode pair, so that the run loop does not decode flags or check parity on
+//every step. Instructions that would fault decode to BAD_PARITY or BAD_FLAGS
+//and only raise their exception when they are executed, as before.
+class Decoder {
+	static final int UNDECODED = 0;
+	static final int NOP = 1;
+	static final int NOT = 2;
+	static final int HALT = 3;
+	static final int LOD_DIRECT = 4;
+	static final int LOD_IMMEDIATE = 5;
+	static final int LOD_INDIRECT = 6;
+	static final int STO_DIRECT = 7;
+	static final int STO_INDIRECT = 8;
+	static final int ADD_DIRECT = 9;
+	static final int ADD_IMMEDIATE = 10;
+	static final int ADD_INDIRECT = 11;
+	static final int SUB_DIRECT = 12;
+	static final int SUB_IMMEDIATE = 13;
+	static final int SUB_INDIRECT = 14;
+	static final int MUL_DIRECT = 15;
+	static final int MUL_IMMEDIATE = 16;
+	static final int MUL_INDIRECT = 17;
+	static final int DIV_DIRECT = 18;
+	static final int DIV_IMMEDIATE = 19;
+	static final int DIV_INDIRECT = 20;
+	static final int AND_DIRECT = 21;
+	static final int AND_IMMEDIATE = 22;
+	static final int JUMP_RELATIVE = 23;
+	static final int JUMP_ABSOLUTE = 24;
+	static final int JUMP_INDIRECT_RELATIVE = 25;
+	static final int JUMP_INDIRECT_ABSOLUTE = 26;
+	static final int JMPZ_RELATIVE = 27;
+	static final int JMPZ_ABSOLUTE = 28;
+	static final int JMPZ_INDIRECT_RELATIVE = 29;
+	static final int JMPZ_INDIRECT_ABSOLUTE = 30;
+	static final int CMPL = 31;
+	static final int CMPZ = 32;
+	static final int BAD_PARITY = 33;
+	static final int BAD_FLAGS = 34;
+	// opcodes with no built-in micro-op are run through MachineModel.ACTION
+	static final int OTHER = 35;
+	// fused micro-ops standing for a sequence of instructions, see Fusion
+	static final int FUSED = 64;
+	static final int FUSED_INCREMENT = 64;
+	static final int FUSED_DECREMENT = 65;
+	static final int FUSED_CMPZ_JMPZ_RELATIVE = 66;
+	static final int FUSED_CMPZ_JMPZ_ABSOLUTE = 67;
+	static final int FUSED_MOVE = 68;
+	static final int FUSED_MOVE_INDIRECT = 69;
+	
+	//Micro-op for a single instruction; a null instruction throws a
+	//NullPointerException just as fetching it in step() always has
+	static int decode(Instruction instr) {
+		return decode(instr.opcode);
+	}
+	
+	static int decode(byte opcode) {
+		if (Instruction.numOnes(opcode) % 2 == 1) return BAD_PARITY;
+		int flags = opcode & 6;
+		switch (opcode/8) {
+		case 0: return flags == 0 ? NOP : BAD_FLAGS;
+		case 1: return flags == 0 ? NOT : BAD_FLAGS;
+		case 2: return flags == 0 ? HALT : BAD_FLAGS;
+		case 3: return arithmetic(flags, LOD_DIRECT);
+		case 4:
+			if (flags == 0) return STO_DIRECT;
+			if (flags == 4) return STO_INDIRECT;
+			return BAD_FLAGS;
+		case 5: return arithmetic(flags, ADD_DIRECT);
+		case 6: return arithmetic(flags, SUB_DIRECT);
+		case 7: return arithmetic(flags, MUL_DIRECT);
+		case 8: return arithmetic(flags, DIV_DIRECT);
+		case 9:
+			if (flags == 0) return AND_DIRECT;
+			if (flags == 2) return AND_IMMEDIATE;
+			return BAD_FLAGS;
+		case 10: return JUMP_RELATIVE + flags/2;
+		case 11: return JMPZ_RELATIVE + flags/2;
+		case 12: return flags == 0 ? CMPL : BAD_FLAGS;
+		case 13: return flags == 0 ? CMPZ : BAD_FLAGS;
+		default: return OTHER;
+		}
+	}
+	
+	//LOD, ADD, SUB, MUL and DIV each have their direct, immediate and
+	//indirect micro-ops numbered consecutively
+	private static int arithmetic(int flags, int direct) {
+		if (flags == 6) return BAD_FLAGS;
+		return direct + flags/2;
+	}
+}
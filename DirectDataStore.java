@@ -0,0 +1,132 @@
+package project;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+//Data memory in direct buffers, outside the Java heap. A large machine then
+//keeps its cells where the garbage collector does not trace or copy them,
+//and copy is a bulk copy by the JVM rather than a loop over cells. Cells
+//are kept in blocks as HeapDataStore keeps them, with the same generations
+//and the same sharing with forks; each block is a slice of a larger direct
+//buffer, a slab, allocated as blocks are first written.
+class DirectDataStore implements DataStore {
+	private static final int BITS = GenerationStamps.BLOCK_BITS;
+	private static final int MASK = GenerationStamps.BLOCK_SIZE - 1;
+	private static final int SLAB_BLOCKS = 1024;
+	private static final IntBuffer ZERO_BLOCK = allocate(GenerationStamps.BLOCK_SIZE);
+	private static final int[] ZEROS = new int[GenerationStamps.BLOCK_SIZE];
+	private final IntBuffer[] blocks;
+	// blocks this store must copy before writing: ZERO_BLOCK and any that a
+	// fork may also hold
+	private final boolean[] shared;
+	private final GenerationStamps stamps;
+	private final int size;
+	private IntBuffer slab;
+	private int slabUsed;
+
+	DirectDataStore(int size) {
+		this.size = size;
+		blocks = new IntBuffer[(size + MASK) >>> BITS];
+		Arrays.fill(blocks, ZERO_BLOCK);
+		shared = new boolean[blocks.length];
+		Arrays.fill(shared, true);
+		stamps = new GenerationStamps(size);
+	}
+
+	private DirectDataStore(DirectDataStore source) {
+		size = source.size;
+		blocks = source.blocks.clone();
+		shared = new boolean[blocks.length];
+		Arrays.fill(shared, true);
+		Arrays.fill(source.shared, true);
+		stamps = source.stamps.copy();
+	}
+
+	private static IntBuffer allocate(int size) {
+		return ByteBuffer.allocateDirect(4*size).order(ByteOrder.nativeOrder()).asIntBuffer();
+	}
+
+	public int get(int index) {
+		check(index);
+		return stamps.isCurrent(index) ? blocks[index >>> BITS].get(index & MASK) : 0;
+	}
+
+	public void set(int index, int value) {
+		check(index);
+		writable(index).put(index & MASK, value);
+	}
+
+	public void setAll(int start, IntBuffer values) {
+		int length = values.remaining();
+		DataStore.checkRange(start, length, size);
+		int from = values.position();
+		for (int i = start; i < start + length; i = (i | MASK) + 1) {
+			int n = Math.min((i | MASK) + 1, start + length) - i;
+			writable(i).put(i & MASK, values, from + i - start, n);
+		}
+	}
+
+	//The block of index, stamped and this store's own. A stale block reads
+	//as zeros, so it is zeroed or replaced rather than copied.
+	private IntBuffer writable(int index) {
+		int b = index >>> BITS;
+		IntBuffer block = blocks[b];
+		if (stamps.stamp(index)) {
+			if (!shared[b]) {
+				block.put(0, ZEROS);
+				return block;
+			}
+			block = newBlock();
+		} else if (shared[b]) {
+			IntBuffer copy = newBlock();
+			copy.put(0, block, 0, GenerationStamps.BLOCK_SIZE);
+			block = copy;
+		} else {
+			return block;
+		}
+		blocks[b] = block;
+		shared[b] = false;
+		return block;
+	}
+
+	//A block of zeros, the next slice of the slab
+	private IntBuffer newBlock() {
+		if (slab == null || slabUsed == slab.capacity()) {
+			slab = allocate(Math.min(SLAB_BLOCKS, blocks.length) * GenerationStamps.BLOCK_SIZE);
+			slabUsed = 0;
+		}
+		IntBuffer block = slab.slice(slabUsed, GenerationStamps.BLOCK_SIZE);
+		slabUsed += GenerationStamps.BLOCK_SIZE;
+		return block;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		stamps.clear();
+	}
+
+	public DataStore fork() {
+		return new DirectDataStore(this);
+	}
+
+	public int[] copy(int min, int max) {
+		int[] copy = DataStore.range(min, max, size);
+		int end = Math.min(max, size);
+		for (int i = min; i < end; i = (i | MASK) + 1) {
+			blocks[i >>> BITS].get(i & MASK, copy, i - min, Math.min((i | MASK) + 1, end) - i);
+		}
+		stamps.zeroStale(copy, min);
+		return copy;
+	}
+
+	//IntBuffer throws IndexOutOfBoundsException, but a bad data address has
+	//always been an ArrayIndexOutOfBoundsException
+	private void check(int index) {
+		if (index < 0 || index >= size) throw DataStore.outOfBounds(index, size);
+	}
+}
@@ -0,0 +1,27 @@
+package project;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+//Runs the program of one MachineModel. An engine is made for a model by the
+//factory it is registered under (see MachineModel.registerEngine) and keeps
+//no machine state of its own between calls: accum and pc are read from the
+//model at the start of execute and written back before it returns or throws,
+//and data and code are always those of the model's Memory, so engines can be
+//switched between any two calls. Code memory may change between calls, which
+//an engine that caches anything can detect with model.getCodeVersion().
+//
+//On HALT an engine leaves pc at the HALT and calls model.halt(), which tells
+//the HaltCallback. On a fault it leaves pc at the faulting instruction, calls
+//model.fault with the number of instructions it ran before it, then
+//model.halt(), and throws the exception, as MachineModel.interpret does.
+public interface ExecutionEngine {
+	//Runs instructions until HALT, a fault, or maxSteps instructions have
+	//executed, and returns the number executed
+	long execute(long maxSteps);
+
+	//Counters for tuning, by name
+	default Map<String, Long> getMetrics() {
+		return new TreeMap<>();
+	}
+}
@@ -12,7 +12,7 @@ import javax.swing.JOptionPane;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import project.Assembler;
-import project.Loader;
+import project.ProgramCache;
 import project.MachineModel;
 import project.FullAssembler;
 
@@ -24,11 +24,12 @@ public class FilesMgr {
 	private String executableDir; 
 	private Properties properties = null;
 	private File currentlyExecutingFile;
-	private Assembler assembler = new FullAssembler(); 
+	private Assembler assembler; 
 
 	public FilesMgr(ViewMediator view) {
 		mediator = view;
 		model = mediator.getModel();
+		assembler = new FullAssembler(model.getConfig());
 	}
 
 	public void initialize() {
@@ -214,8 +215,15 @@ public class FilesMgr {
 		mediator.clear();
 		String str = "";
 		try {
-			str = Loader.load(model, currentlyExecutingFile);
-			mediator.makeReady("Load Code");
+			str = ProgramCache.load(model, currentlyExecutingFile);
+			if ("success".equals(str)) mediator.makeReady("Load Code");
+			else JOptionPane.showMessageDialog(
+					mediator.getFrame(),  
+					"The file being selected has problems.\n" +
+							str + "\n" +
+							"Cannot load the program",
+							"Warning",
+							JOptionPane.OK_OPTION);
 		} catch (NumberFormatException e ) {
 			JOptionPane.showMessageDialog(
 					mediator.getFrame(),  
@@ -8,6 +8,17 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class FullAssembler implements Assembler {
+	 private final MachineConfig config;
+	 
+	 public FullAssembler() {
+		 this(MachineConfig.DEFAULT);
+	 }
+	 
+	 //Programs are checked against the code and data sizes of config
+	 public FullAssembler(MachineConfig config) {
+		 this.config = config;
+	 }
+	 
 	 public int assemble(String inputFileName, String outputS, StringBuilder error) {
 		 List<String> source = null;
 		 try (Stream<String> lines = Files.lines(Paths.get(inputFileName))) {
@@ -124,6 +135,13 @@ public class FullAssembler implements Assembler {
 			 }
 		 }
 		 
+		 if (inputCodeText.size() > config.getCodeSize()) {
+			 int line = config.getCodeSize() + 1;
+			 if (errors.get(line) == null) {
+				 errors.put(line, "Error on line " + line + ": program does not fit in " + config.getCodeSize() + " words of code memory");
+			 }
+		 }
+		 
 		 int offset = inputCodeText.size() + 1;
 		 for (int i = 0; i < inputDataText.size(); i++) {
 			 String[] parts = inputDataText.get(i).trim().split("\\s+");
@@ -134,7 +152,9 @@ public class FullAssembler implements Assembler {
 			 }
 			 else {
 				 try {
-					 Integer.parseInt(parts[0],16);
+					 int address = Integer.parseInt(parts[0],16);
+					 if ((address < 0 || address >= config.getDataSize()) && errors.get(offset+i+1) == null)
+						 errors.put(offset+i+1, "Error on line " + (offset+i+1) +": data address is outside data memory");
 				 } catch(NumberFormatException e) { 
 					 if(errors.get(offset+i+1) == null)
 						 errors.put(offset+i+1, "Error on line " + (offset+i+1) +": data address is not a hex number");
@@ -0,0 +1,107 @@
+package project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//Superinstructions: short runs of micro-ops that the interpreter executes in
+//a single dispatch. When a program is decoded, the start of every run that
+//matches an entry of the table gets the entry's fused micro-op, longest
+//pattern first; the instructions themselves are kept, so jumps into the
+//middle of a run still work. The built-in entries are handled inside
+//MachineModel.interpret. More can be added with register, giving a handler
+//that does the work of the whole run through the MachineModel accessors and
+//leaves pc after it.
+class Fusion {
+	private static final List<Fusion> TABLE = new ArrayList<>();
+	// TABLE as it was after the last register, read by the interpreter
+	// without taking the lock
+	private static volatile Fusion[] published;
+	static {
+		// LOD x / ADD #k / STO x
+		TABLE.add(new Fusion("increment", Decoder.FUSED_INCREMENT,
+				new int[] {Decoder.LOD_DIRECT, Decoder.ADD_IMMEDIATE, Decoder.STO_DIRECT}, args -> args[0] == args[2], null));
+		// LOD x / SUB #k / STO x
+		TABLE.add(new Fusion("decrement", Decoder.FUSED_DECREMENT,
+				new int[] {Decoder.LOD_DIRECT, Decoder.SUB_IMMEDIATE, Decoder.STO_DIRECT}, args -> args[0] == args[2], null));
+		// CMPZ x / JMPZ n
+		TABLE.add(new Fusion("cmpz-jmpz", Decoder.FUSED_CMPZ_JMPZ_RELATIVE,
+				new int[] {Decoder.CMPZ, Decoder.JMPZ_RELATIVE}, null, null));
+		// CMPZ x / JMPZ #n
+		TABLE.add(new Fusion("cmpz-jmpz#", Decoder.FUSED_CMPZ_JMPZ_ABSOLUTE,
+				new int[] {Decoder.CMPZ, Decoder.JMPZ_ABSOLUTE}, null, null));
+		// LOD x / STO y
+		TABLE.add(new Fusion("move", Decoder.FUSED_MOVE,
+				new int[] {Decoder.LOD_DIRECT, Decoder.STO_DIRECT}, null, null));
+		// LOD @p / STO @q
+		TABLE.add(new Fusion("move@", Decoder.FUSED_MOVE_INDIRECT,
+				new int[] {Decoder.LOD_INDIRECT, Decoder.STO_INDIRECT}, null, null));
+		published = TABLE.toArray(new Fusion[0]);
+	}
+	
+	interface Matcher {
+		boolean matches(int[] args);
+	}
+	
+	interface Handler {
+		void run(MachineModel model);
+	}
+	
+	final String name;
+	final int op;
+	final int[] pattern;
+	final Matcher matcher;
+	final Handler handler;
+	
+	private Fusion(String name, int op, int[] pattern, Matcher matcher, Handler handler) {
+		this.name = name;
+		this.op = op;
+		this.pattern = pattern;
+		this.matcher = matcher;
+		this.handler = handler;
+	}
+	
+	//Adds a superinstruction for the given micro-ops (see Decoder); matcher,
+	//which may be null, gets the arguments of the run. Programs decoded
+	//afterwards use it.
+	static synchronized Fusion register(String name, int[] pattern, Matcher matcher, Handler handler) {
+		if (pattern.length < 2 || pattern.length > 4) {
+			throw new IllegalArgumentException("A fusion covers 2 to 4 instructions");
+		}
+		if (handler == null) throw new IllegalArgumentException("A registered fusion needs a handler");
+		Fusion fusion = new Fusion(name, Decoder.FUSED + TABLE.size(), pattern.clone(), matcher, handler);
+		TABLE.add(fusion);
+		published = TABLE.toArray(new Fusion[0]);
+		return fusion;
+	}
+	
+	static Fusion get(int op) {
+		return published[op - Decoder.FUSED];
+	}
+	
+	static int count() {
+		return published.length;
+	}
+	
+	//Fused micro-op for the run starting at index, or 0 if none matches
+	static synchronized int match(Memory memory, int index) {
+		Fusion best = null;
+		for (Fusion fusion : TABLE) {
+			if ((best == null || fusion.pattern.length > best.pattern.length) && fusion.matches(memory, index)) {
+				best = fusion;
+			}
+		}
+		return best == null ? 0 : best.op;
+	}
+	
+	private boolean matches(Memory memory, int index) {
+		if (index + pattern.length - 1 > memory.getProgramSize()) return false;
+		for (int k = 0; k < pattern.length; k++) {
+			if (!memory.hasCode(index + k) || memory.getOp(index + k) != pattern[k]) return false;
+		}
+		if (matcher == null) return true;
+		// the arguments are only gathered for a run that has the right micro-ops
+		int[] args = new int[pattern.length];
+		for (int k = 0; k < pattern.length; k++) args[k] = memory.getOpArg(index + k);
+		return matcher.matches(args);
+	}
+}
@@ -0,0 +1,61 @@
+package project;
+
+import java.util.Arrays;
+
+//Lets a memory be cleared in constant time. Cells are grouped in blocks of
+//BLOCK_SIZE and each block is stamped with the generation it was last
+//written in. clear() starts a new generation, after which every block is
+//stale and must be read as zeros. The first write to a stale block zeroes
+//and stamps it, so a clear is paid for later, one touched block at a time.
+class GenerationStamps {
+	static final int BLOCK_BITS = 6;
+	static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+	private final int[] stamps;
+	// stamps start at 0, so every block starts stale
+	private int generation = 1;
+
+	GenerationStamps(int size) {
+		stamps = new int[(size + BLOCK_SIZE - 1) >>> BLOCK_BITS];
+	}
+
+	private GenerationStamps(GenerationStamps source) {
+		stamps = source.stamps.clone();
+		generation = source.generation;
+	}
+
+	GenerationStamps copy() {
+		return new GenerationStamps(this);
+	}
+
+	boolean isCurrent(int index) {
+		return stamps[index >>> BLOCK_BITS] == generation;
+	}
+
+	//Stamps the block of index with the current generation and returns true
+	//if it was stale, in which case the caller must zero the block
+	boolean stamp(int index) {
+		int block = index >>> BLOCK_BITS;
+		if (stamps[block] == generation) return false;
+		stamps[block] = generation;
+		return true;
+	}
+
+	void clear() {
+		generation++;
+		if (generation == 0) { // wrapped round: start again from stale stamps
+			Arrays.fill(stamps, 0);
+			generation = 1;
+		}
+	}
+
+	//Zeroes the cells of copy, which holds cells min onwards, that lie in
+	//stale blocks
+	void zeroStale(int[] copy, int min) {
+		int max = min + copy.length;
+		for (int start = min & -BLOCK_SIZE; start < max; start += BLOCK_SIZE) {
+			if (start >>> BLOCK_BITS < stamps.length && isCurrent(start)) continue;
+			int from = Math.max(start, min);
+			Arrays.fill(copy, from - min, Math.min(start + BLOCK_SIZE, max) - min, 0);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package project;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+//Data memory on the Java heap, the default, in blocks of the size that
+//GenerationStamps uses. Clearing only starts a new generation. A fork shares
+//every block with its source, and whichever of them next writes to a shared
+//block copies it first, so a snapshot costs one reference per block rather
+//than a copy of the cells. Blocks start as one shared block of zeros.
+class HeapDataStore implements DataStore {
+	private static final int BITS = GenerationStamps.BLOCK_BITS;
+	private static final int MASK = GenerationStamps.BLOCK_SIZE - 1;
+	private static final int[] ZERO_BLOCK = new int[GenerationStamps.BLOCK_SIZE];
+	private final int[][] blocks;
+	// blocks this store must copy before writing: ZERO_BLOCK and any that a
+	// fork may also hold
+	private final boolean[] shared;
+	private final GenerationStamps stamps;
+	private final int size;
+
+	HeapDataStore(int size) {
+		this.size = size;
+		blocks = new int[(size + MASK) >>> BITS][];
+		Arrays.fill(blocks, ZERO_BLOCK);
+		shared = new boolean[blocks.length];
+		Arrays.fill(shared, true);
+		stamps = new GenerationStamps(size);
+	}
+
+	//A store holding a copy of cells
+	HeapDataStore(int[] cells) {
+		this(cells.length);
+		setAll(0, IntBuffer.wrap(cells));
+	}
+
+	private HeapDataStore(HeapDataStore source) {
+		size = source.size;
+		blocks = source.blocks.clone();
+		shared = new boolean[blocks.length];
+		Arrays.fill(shared, true);
+		Arrays.fill(source.shared, true);
+		stamps = source.stamps.copy();
+	}
+
+	public int get(int index) {
+		check(index);
+		int value = blocks[index >>> BITS][index & MASK];
+		return stamps.isCurrent(index) ? value : 0;
+	}
+
+	public void set(int index, int value) {
+		check(index);
+		writable(index)[index & MASK] = value;
+	}
+
+	public void setAll(int start, IntBuffer values) {
+		int length = values.remaining();
+		DataStore.checkRange(start, length, size);
+		int from = values.position();
+		for (int i = start; i < start + length; i = (i | MASK) + 1) {
+			int n = Math.min((i | MASK) + 1, start + length) - i;
+			values.get(from + i - start, writable(i), i & MASK, n);
+		}
+	}
+
+	public void fill(int start, int length, int value) {
+		DataStore.checkRange(start, length, size);
+		for (int i = start; i < start + length; i = (i | MASK) + 1) {
+			int end = Math.min((i | MASK) + 1, start + length);
+			Arrays.fill(writable(i), i & MASK, ((end - 1) & MASK) + 1, value);
+		}
+	}
+
+	//The block of index, stamped and this store's own. A stale block reads
+	//as zeros, so it is zeroed or replaced rather than copied.
+	private int[] writable(int index) {
+		int b = index >>> BITS;
+		int[] block = blocks[b];
+		if (stamps.stamp(index)) {
+			if (!shared[b]) {
+				Arrays.fill(block, 0);
+				return block;
+			}
+			block = new int[GenerationStamps.BLOCK_SIZE];
+		} else if (shared[b]) {
+			block = block.clone();
+		} else {
+			return block;
+		}
+		blocks[b] = block;
+		shared[b] = false;
+		return block;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		stamps.clear();
+	}
+
+	public DataStore fork() {
+		return new HeapDataStore(this);
+	}
+
+	public int[] copy(int min, int max) {
+		int[] copy = DataStore.range(min, max, size);
+		int end = Math.min(max, size);
+		for (int i = min; i < end; i = (i | MASK) + 1) {
+			System.arraycopy(blocks[i >>> BITS], i & MASK, copy, i - min, Math.min((i | MASK) + 1, end) - i);
+		}
+		stamps.zeroStale(copy, min);
+		return copy;
+	}
+
+	private void check(int index) {
+		if (index < 0 || index >= size) throw DataStore.outOfBounds(index, size);
+	}
+}
@@ -36,18 +36,16 @@ public class Instruction {
 	}
 	
 	 public static boolean noArgument(Instruction instr) {
-		 if (instr.opcode < 24) return true;
+		 return noArgument(instr.opcode);
+	 }
+	 
+	 public static boolean noArgument(byte opcode) {
+		 if (opcode < 24) return true;
 		 return false;
 	 }
 	 
 	 static int numOnes(int k) {
-		 String str = Integer.toUnsignedString(k, 2);
-		 int count = 0;
-		 for (char c: str.toCharArray()) {
-			 if (c == '1') count++;
-		 }
-		 
-		 return count;
+		 return Integer.bitCount(k);
 	 }
 	 
 	 static void checkParity(Instruction instr) {
@@ -2,7 +2,18 @@ package project;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
-
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -1957,5 +1968,898 @@ public class JUnitTests {
 		model.setPC(pcInit);
 		model.step();
 	}
-}
 
+	@Test
+	// A loaded program that passes verification is marked verified until its code changes
+	public void testVerifyMarksProgram() {
+		model.setCode(0, new Instruction((byte)0b00011011,5)); // LOD #5
+		model.setCode(1, new Instruction((byte)0b00010001,0)); // HALT
+		model.verifyCode();
+		assertEquals("Program verified", true, model.isVerified());
+		model.setCode(1, new Instruction((byte)0b00010001,0));
+		assertEquals("Changed program not verified", false, model.isVerified());
+	}
+
+	@Test (expected=ParityCheckException.class)
+	// Verification reports bad parity before the program runs
+	public void testVerifyBadParity() {
+		model.setCode(0, new Instruction((byte)0b00011001,5));
+		model.setCode(1, new Instruction((byte)0b00010001,0));
+		model.verifyCode();
+	}
+
+	@Test (expected=IllegalInstructionException.class)
+	// Verification reports illegal flags before the program runs
+	public void testVerifyIllegalFlags() {
+		model.setCode(0, new Instruction((byte)0b00100010,5)); // STO #5
+		model.setCode(1, new Instruction((byte)0b00010001,0));
+		model.verifyCode();
+	}
+
+	@Test (expected=CodeAccessException.class)
+	// Verification reports a jump that leaves the program
+	public void testVerifyJumpOutsideProgram() {
+		model.setCode(0, new Instruction((byte)0b01010011,100)); // JUMP #100
+		model.setCode(1, new Instruction((byte)0b00010001,0));
+		model.verifyCode();
+	}
+
+	// The default machine with data memory kept by backend, in a new file if
+	// MAPPED or SHARED
+	private MachineConfig backendConfig(Memory.DataBackend backend) {
+		if (backend == Memory.DataBackend.MAPPED) return MachineConfig.DEFAULT.withDataFile(tempFile());
+		if (backend == Memory.DataBackend.SHARED) return MachineConfig.DEFAULT.withSharedDataFile(tempFile());
+		return MachineConfig.DEFAULT.withDataBackend(backend);
+	}
+
+	private File tempFile() {
+		try {
+			File file = File.createTempFile("pippin", ".data");
+			file.delete();
+			file.deleteOnExit();
+			return file;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// The sum loop of loadSumLoop, counting down from 100, assembled to a pexe file
+	private File assembleSumLoop() {
+		try {
+			File source = File.createTempFile("pippin", ".pasm");
+			source.deleteOnExit();
+			Files.write(source.toPath(), Arrays.asList("LOD 0", "JMPZ #9", "LOD 1", "ADD 0", "STO 1",
+					"LOD 0", "SUB #1", "STO 0", "JUMP #0", "HALT", "DATA", "0 64", "1 0"));
+			File pexe = tempFile();
+			new SimpleAssembler().assemble(source.getPath(), pexe.getPath(), new StringBuilder());
+			return pexe;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Test
+	// A verified program is fetched without stamp checks, but a stale block
+	// inside it is still empty
+	public void testVerifiedFetchStaleBlock() {
+		model.setCode(70, new Instruction((byte)0b00011011, 5)); // LOD# 5
+		model.clear();
+		model.setCode(0, new Instruction((byte)0b01010011, 70)); // JUMP #70
+		model.setCode(130, new Instruction((byte)0b00010001, 0));
+		model.verifyCode();
+		RunResult result = model.run(10);
+		assertEquals("Hole", RunResult.StopReason.CODE_ACCESS, result.getReason());
+		assertEquals("At the hole", 70, result.getPC());
+		assertEquals("Accum", 0, model.getAccum());
+	}
+
+	@Test
+	// The Loader reports a program that fails verification as a message
+	public void testLoaderVerificationMessage() {
+		ByteBuffer buff = PexeFormat.encode(Arrays.asList(new Instruction((byte)0b00010000, 0)),
+				new ArrayList<Assembler.DataPair>(), false);
+		File pexe = writeTemp(buff);
+		String result = Loader.load(new MachineModel(() -> {}), pexe);
+		assertEquals("Message", "Program " + pexe.getName() + " failed verification: The instruction at 0 is corrupted.", result);
+	}
+
+	// Counts data[0] down to 0, adding each value into data[1], then halts
+	private void loadSumLoop(MachineModel m, int count) {
+		int[][] program = {{3,0,0},{11,2,9},{3,0,1},{5,0,0},{4,0,1},{3,0,0},{6,2,1},{4,0,0},{10,2,0},{2,0,0}};
+		for (int i = 0; i < program.length; i++) {
+			int opPart = 8*program[i][0] + program[i][1];
+			opPart += Instruction.numOnes(opPart)%2;
+			m.setCode(i, new Instruction((byte)opPart, program[i][2]));
+		}
+		m.setData(0, count);
+		m.setData(1, 0);
+		m.setPC(0);
+	}
+
+	@Test
+	// The compiled program leaves the machine as the interpreter does
+	public void testBytecodeModeSumLoop() {
+		loadSumLoop(model, 100);
+		long interpreted = model.execute(Long.MAX_VALUE);
+		int[] expected = model.getData().clone();
+		int accum = model.getAccum();
+		int pc = model.getPC();
+		model.setEngine("bytecode");
+		loadSumLoop(model, 100);
+		assertEquals("Same number of steps", interpreted, model.execute(Long.MAX_VALUE));
+		assertArrayEquals(expected, model.getData());
+		assertEquals("Sum computed", 5050, model.getData(1));
+		assertEquals("Accumulator", accum, model.getAccum());
+		assertEquals("Program counter at HALT", pc, model.getPC());
+	}
+
+	@Test (expected=DivideByZeroException.class)
+	// Compiled code raises the same exceptions as the interpreter
+	public void testBytecodeModeDivideByZero() {
+		model.setEngine("bytecode");
+		model.setCode(0, new Instruction((byte)0b01000010,0)); // DIV #0
+		model.setPC(0);
+		model.step();
+	}
+
+	@Test
+	// Closure-compiled blocks leave the machine as the interpreter does,
+	// including when the step budget ends part way through a block
+	public void testClosureModeSumLoop() {
+		loadSumLoop(model, 100);
+		long interpreted = model.execute(Long.MAX_VALUE);
+		int[] expected = model.getData().clone();
+		loadSumLoop(model, 100);
+		model.execute(12);
+		int pc = model.getPC();
+		int[] partial = model.getData().clone();
+		model.setEngine("closure");
+		loadSumLoop(model, 100);
+		assertEquals("Same partial run", 12, model.execute(12));
+		assertEquals("Same pc after partial run", pc, model.getPC());
+		assertArrayEquals(partial, model.getData());
+		assertEquals("Same number of steps", interpreted - 12, model.execute(Long.MAX_VALUE));
+		assertArrayEquals(expected, model.getData());
+	}
+
+	@Test
+	// Straight-line code longer than a block is split rather than run as one deep chain
+	public void testClosureModeLongBlock() {
+		MachineModel m = new MachineModel(() -> {}, new MachineConfig(Memory.DATA_SIZE, 5001).withEngine("closure"));
+		loadLongBlock(m, 5000);
+		assertEquals("Steps", 5001, m.run(10_000).getSteps());
+		assertTrue("Halted", m.isHalted());
+		assertEquals("Accum", 5000, m.getAccum());
+		assertEquals("PC", 5000, m.getPC());
+	}
+
+	// length instructions ADD #1 and then HALT
+	private void loadLongBlock(MachineModel m, int length) {
+		int opPart = 8*5 + 2;
+		opPart += Instruction.numOnes(opPart)%2;
+		for (int i = 0; i < length; i++) m.setCode(i, new Instruction((byte)opPart, 1));
+		m.setCode(length, new Instruction((byte)0b00010001, 0));
+		m.setPC(0);
+	}
+
+	@Test
+	// Tiered execution promotes the hot loop and still computes the same result
+	public void testTieredModePromotesLoop() {
+		model.setEngine("tiered");
+		loadSumLoop(model, 1000);
+		model.execute(Long.MAX_VALUE);
+		assertEquals("Sum computed", 500500, model.getData(1));
+		assertEquals("Stopped at HALT", 9, model.getPC());
+		Map<String, Long> metrics = model.getEngineMetrics();
+		assertTrue("Loop blocks promoted", metrics.get("promotedBlocks") > 0);
+		assertTrue("Some steps interpreted first", metrics.get("interpretedSteps") > 0);
+	}
+
+	@Test
+	// A hot block longer than MAX_BLOCK is promoted in pieces
+	public void testTieredModeLongBlock() {
+		System.setProperty("pippin.tier.blockThreshold", "1");
+		try {
+			MachineModel m = new MachineModel(() -> {}, new MachineConfig(Memory.DATA_SIZE, 5001).withEngine("tiered"));
+			loadLongBlock(m, 5000);
+			assertEquals("Steps", 5001, m.run(10_000).getSteps());
+			assertEquals("Accum", 5000, m.getAccum());
+			assertTrue("Promoted", m.getEngineMetrics().get("promotedBlocks") > 1);
+		} finally {
+			System.clearProperty("pippin.tier.blockThreshold");
+		}
+	}
+
+	@Test
+	// The copy of code memory a background compile reads does not see later changes
+	public void testForkCodeIsolated() {
+		loadSumLoop(model, 10);
+		Memory code = model.getMemory().forkCode();
+		model.setCode(0, new Instruction((byte)0b00010001, 0));
+		model.clear();
+		assertEquals("Copy keeps its instruction", 3, code.getCode(0).opcode/8);
+		assertEquals("Copy keeps its argument", 9, code.getOpArg(1));
+	}
+
+	@Test
+	// The loop is recorded as a trace whose JMPZ guard fails once, when the loop ends
+	public void testTraceModeRecordsLoop() {
+		model.setEngine("trace");
+		loadSumLoop(model, 1000);
+		model.execute(Long.MAX_VALUE);
+		assertEquals("Sum computed", 500500, model.getData(1));
+		assertEquals("Stopped at HALT", 9, model.getPC());
+		Map<String, Long> metrics = model.getEngineMetrics();
+		assertEquals("One trace", 1L, (long) metrics.get("tracesCompiled"));
+		assertEquals("Guard failed on loop exit", 1L, (long) metrics.get("guardFailures@0"));
+	}
+
+	@Test
+	// A loop that ends in a JMPZ back-edge leaves its trace on the last instruction
+	public void testTraceModeConditionalBackEdge() {
+		// counts data[0] up to 0, jumping back while it is negative
+		int[][] program = {{3,0,0},{5,2,1},{4,0,0},{12,0,0},{1,0,0},{11,2,0},{2,0,0}};
+		for (int i = 0; i < program.length; i++) {
+			int opPart = 8*program[i][0] + program[i][1];
+			opPart += Instruction.numOnes(opPart)%2;
+			model.setCode(i, new Instruction((byte)opPart, program[i][2]));
+		}
+		model.setData(0, -100);
+		model.setEngine("trace");
+		RunResult result = model.run(100_000);
+		assertEquals("Halted", RunResult.StopReason.HALTED, result.getReason());
+		assertEquals("Steps", 601, result.getSteps());
+		assertEquals("Counted to 0", 0, model.getData(0));
+		Map<String, Long> metrics = model.getEngineMetrics();
+		assertEquals("One trace", 1L, (long) metrics.get("tracesCompiled"));
+		assertEquals("Guard failed on loop exit", 1L, (long) metrics.get("guardFailures@0"));
+	}
+
+	@Test
+	// LOD 0 / SUB #1 / STO 0 runs as one decrement and still counts three steps
+	public void testFusedDecrement() {
+		loadSumLoop(model, 100);
+		model.setProgramSize(10);
+		model.decodeCode();
+		long fused = model.execute(Long.MAX_VALUE);
+		assertEquals("Sum computed", 5050, model.getData(1));
+		assertEquals("Stopped at HALT", 9, model.getPC());
+		assertEquals("Decrement fired once per pass", 100L, (long) model.getFusionReport().get("decrement"));
+		loadSumLoop(model, 100);
+		assertEquals("Same step count as unfused", model.execute(Long.MAX_VALUE), fused);
+	}
+
+	@Test
+	// run reports HALT and the instructions executed instead of throwing
+	public void testRunHalts() {
+		loadSumLoop(model, 10);
+		RunResult result = model.run(Long.MAX_VALUE);
+		assertEquals("Stopped at HALT", RunResult.StopReason.HALTED, result.getReason());
+		assertEquals("HALT pc", 9, result.getPC());
+		assertEquals("Steps", 2 + 9*10 + 1, result.getSteps());
+		assertEquals("Budget ends the run", RunResult.StopReason.BUDGET_EXHAUSTED, model.run(0).getReason());
+	}
+
+	@Test
+	// A fault in the middle of a block is a result with the faulting pc
+	public void testRunDivideByZero() {
+		model.setEngine("closure");
+		model.setCode(0, new Instruction((byte)0b00011011,6)); // LOD #6
+		model.setCode(1, new Instruction((byte)0b01000001,0)); // DIV 0
+		model.setCode(2, new Instruction((byte)0b00010001,0)); // HALT
+		model.setData(0, 0);
+		model.setPC(0);
+		RunResult result = model.run(10);
+		assertEquals("Divide by zero", RunResult.StopReason.DIVIDE_BY_ZERO, result.getReason());
+		assertEquals("Faulting pc", 1, result.getPC());
+		assertEquals("Only the LOD ran", 1, result.getSteps());
+		assertTrue("Exception kept", result.getFault() instanceof DivideByZeroException);
+	}
+
+	@Test(expected=DivideByZeroException.class)
+	// The exception is still there for callers that ask for it
+	public void testRunThrowIfFault() {
+		model.setCode(0, new Instruction((byte)0b01000010,0)); // DIV #0
+		model.setPC(0);
+		model.run(1).throwIfFault();
+	}
+
+	@Test
+	// runUntil stops before the first instruction for which the condition holds
+	public void testRunUntil() {
+		loadSumLoop(model, 10);
+		RunResult result = model.runUntil(m -> m.getData(1) >= 40);
+		assertEquals("Condition met", RunResult.StopReason.CONDITION_MET, result.getReason());
+		assertEquals("Sum so far", 10+9+8+7+6, model.getData(1));
+		assertEquals("Just after the STO", 5, result.getPC());
+	}
+
+	@Test
+	// Running off the end of the program is a code access fault
+	public void testRunCodeAccess() {
+		model.setCode(0, new Instruction((byte)0b01010011,5)); // JUMP #5
+		model.setPC(0);
+		RunResult result = model.run(10);
+		assertEquals("Code access", RunResult.StopReason.CODE_ACCESS, result.getReason());
+		assertEquals("pc of the empty cell", 5, result.getPC());
+		assertEquals("The JUMP ran", 1, result.getSteps());
+	}
+
+	@Test
+	// Every built-in engine runs the program to the same state
+	public void testEnginesAgree() {
+		for (String name : MachineModel.getEngineNames()) {
+			model.setEngine(name);
+			loadSumLoop(model, 50);
+			RunResult result = model.run(Long.MAX_VALUE);
+			assertEquals(name + " halts", RunResult.StopReason.HALTED, result.getReason());
+			assertEquals(name + " steps", 2 + 9*50 + 1, result.getSteps());
+			assertEquals(name + " sum", 1275, model.getData(1));
+			assertEquals(name + " pc", 9, model.getPC());
+		}
+	}
+
+	@Test
+	// An engine registered by name can be chosen when the model is made
+	public void testRegisteredEngine() {
+		MachineModel.registerEngine("nop", m -> maxSteps -> {
+			m.setPC(m.getPC() + 1);
+			return 1;
+		});
+		MachineModel other = new MachineModel(() -> {}, "nop");
+		assertEquals("nop", other.getEngineName());
+		other.step();
+		assertEquals("Engine ran", 1, other.getPC());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testUnknownEngine() {
+		model.setEngine("no such engine");
+	}
+
+	@Test
+	// Packed code memory gives back the opcode and argument it was given
+	public void testPackedCode() {
+		model.setCode(3, (byte)0b00011011, -7); // LOD #-7
+		Instruction instr = model.getCode(3);
+		assertEquals("Opcode", 0b00011011, instr.opcode);
+		assertEquals("Negative argument", -7, instr.arg);
+		assertEquals("Empty cell", null, model.getCode(4));
+		model.clear();
+		assertEquals("Cleared", null, model.getCode(3));
+	}
+
+	@Test
+	// Data memory in a direct buffer behaves as the heap array does
+	public void testDirectDataBackend() {
+		MachineModel direct = new MachineModel(() -> {}, MachineConfig.DEFAULT.withDataBackend(Memory.DataBackend.DIRECT));
+		loadSumLoop(direct, 100);
+		assertEquals("Halted", RunResult.StopReason.HALTED, direct.run(Long.MAX_VALUE).getReason());
+		assertEquals("Sum computed", 5050, direct.getData(1));
+		direct.setCode(0, new Instruction((byte)0b00011000, Memory.DATA_SIZE)); // LOD past the end
+		direct.setPC(0);
+		assertEquals("Out of range", RunResult.StopReason.DATA_OUT_OF_RANGE, direct.run(1).getReason());
+		direct.clear();
+		assertArrayEquals(new int[Memory.DATA_SIZE], direct.getData());
+	}
+
+	@Test
+	// Paged data memory only allocates the pages that are written
+	public void testPagedDataBackend() {
+		MachineModel paged = new MachineModel(() -> {},
+				MachineConfig.DEFAULT.withDataBackend(Memory.DataBackend.PAGED).withDataSize(50_000_000));
+		paged.setData(49_999_999, 7);
+		paged.setData(1_000, 0);
+		assertEquals("Far cell", 7, paged.getData(49_999_999));
+		assertEquals("Untouched cell", 0, paged.getData(25_000_000));
+		PagedDataStore store = (PagedDataStore) paged.getMemory().getDataStore();
+		assertEquals("One page", 1, store.allocatedPages());
+		loadSumLoop(paged, 100);
+		paged.execute(Long.MAX_VALUE);
+		assertEquals("Sum computed", 5050, paged.getData(1));
+		paged.clear();
+		assertEquals("Cleared", 0, paged.getData(49_999_999));
+		assertEquals("No pages", 0, store.allocatedPages());
+	}
+
+	@Test
+	// Clearing paged data starts a new generation; forks and later writes see the right cells
+	public void testPagedDataClearGeneration() {
+		PagedDataStore store = new PagedDataStore(5_000);
+		store.set(10, 1);
+		store.set(3_000, 2);
+		DataStore fork = store.fork();
+		store.clear();
+		assertEquals("Cleared", 0, store.get(10));
+		assertEquals("Fork keeps its cells", 1, fork.get(10));
+		assertEquals("Fork keeps its cells", 2, fork.get(3_000));
+		store.set(11, 5);
+		assertEquals("Written after clear", 5, store.get(11));
+		assertEquals("Stale neighbour", 0, store.get(10));
+		assertEquals("Fork unchanged", 0, fork.get(11));
+		fork.set(3_001, 4);
+		assertEquals("Fork's write", 4, fork.get(3_001));
+		assertEquals("Source still cleared", 0, store.get(3_001));
+		assertEquals("One page", 1, store.allocatedPages());
+	}
+
+	@Test(expected=ArrayIndexOutOfBoundsException.class)
+	public void testPagedDataOutOfRange() {
+		MachineModel paged = new MachineModel(() -> {},
+				MachineConfig.DEFAULT.withDataBackend(Memory.DataBackend.PAGED).withDataSize(1500));
+		paged.getData(1500);
+	}
+
+	@Test
+	// Code and data sizes are set per machine
+	public void testMachineConfigSizes() {
+		MachineModel big = new MachineModel(() -> {}, new MachineConfig(2_000_000, 100_000));
+		assertEquals("Data size", 2_000_000, big.getDataSize());
+		assertEquals("Code size", 100_000, big.getCodeSize());
+		big.setData(1_999_999, 3);
+		big.setCode(99_999, new Instruction((byte)0b00010001, 0)); // HALT
+		big.setPC(99_999);
+		assertEquals("Halted at the last cell", RunResult.StopReason.HALTED, big.run(1).getReason());
+		MachineModel small = new MachineModel(() -> {}, new MachineConfig(16, 8));
+		small.setCode(0, new Instruction((byte)0b00011000, 16)); // LOD 16
+		small.setPC(0);
+		assertEquals("Past the small data memory", RunResult.StopReason.DATA_OUT_OF_RANGE, small.run(1).getReason());
+	}
+
+	@Test(expected=ArrayIndexOutOfBoundsException.class)
+	public void testMachineConfigCodeSize() {
+		new MachineModel(() -> {}, new MachineConfig(16, 8)).setCode(8, new Instruction((byte)0b00010001, 0));
+	}
+
+	@Test
+	// Memory reads as zeros after a clear, however much was written before it
+	public void testClearThenReuse() {
+		for (Memory.DataBackend backend : Memory.DataBackend.values()) {
+			MachineModel m = new MachineModel(() -> {}, backendConfig(backend));
+			for (int round = 0; round < 3; round++) {
+				loadSumLoop(m, 100);
+				m.setData(300, 9);
+				m.execute(Long.MAX_VALUE);
+				assertEquals(backend + " sum computed", 5050, m.getData(1));
+				m.clear();
+				// other machines may be using SHARED data, so it is cleared on its own
+				if (backend == Memory.DataBackend.SHARED) m.clearSharedData();
+				assertArrayEquals(backend + " data cleared", new int[m.getDataSize()], m.getData());
+				assertTrue(backend + " code cleared", m.getCode(0) == null);
+				m.setData(301, 4);
+				assertEquals(backend + " written after clear", 4, m.getData(301));
+				assertEquals(backend + " neighbour still clear", 0, m.getData(300));
+				assertArrayEquals(backend + " copy after clear", new int[] {0, 4, 0}, m.getData(300, 303));
+			}
+		}
+	}
+
+	@Test
+	// Only the pages written since the last reset are dirty
+	public void testDirtyPages() {
+		MachineModel m = new MachineModel(() -> {}, MachineConfig.DEFAULT.withDataSize(20_000));
+		assertEquals("Everything dirty at first", 0, m.nextDirtyPage(0));
+		m.resetDirtyPages();
+		assertEquals("Nothing dirty", -1, m.nextDirtyPage(0));
+		m.setData(5, 1);
+		m.setData(130, 1);
+		m.setData(19_999, 1);
+		assertEquals("First page", 0, m.nextDirtyPage(0));
+		assertEquals("Third page", 2, m.nextDirtyPage(1));
+		assertEquals("Last page", 19_999 / Memory.DIRTY_PAGE_SIZE, m.nextDirtyPage(3));
+		assertEquals("No more", -1, m.nextDirtyPage(19_999 / Memory.DIRTY_PAGE_SIZE + 1));
+		m.resetDirtyPages();
+		m.clear();
+		assertEquals("Dirty after a clear", 100, m.nextDirtyPage(100));
+	}
+
+	@Test
+	// A restored or forked machine runs as the original did from the snapshot
+	public void testSnapshotRestore() {
+		for (Memory.DataBackend backend : Memory.DataBackend.values()) {
+			MachineModel m = new MachineModel(() -> {}, backendConfig(backend).withEngine("closure"));
+			loadSumLoop(m, 100);
+			Snapshot start = m.snapshot();
+			MachineModel fork = m.fork();
+			m.execute(Long.MAX_VALUE);
+			assertEquals(backend + " sum computed", 5050, m.getData(1));
+			assertEquals(backend + " fork untouched", 0, fork.getData(1));
+			for (int round = 0; round < 3; round++) {
+				m.restore(start);
+				assertEquals(backend + " data restored", 0, m.getData(1));
+				assertEquals(backend + " pc restored", 0, m.getPC());
+				m.execute(Long.MAX_VALUE);
+				assertEquals(backend + " sum again", 5050, m.getData(1));
+			}
+			fork.setData(0, 10);
+			fork.execute(Long.MAX_VALUE);
+			assertEquals(backend + " fork runs alone", 55, fork.getData(1));
+			m.setCode(6, new Instruction((byte)0b00011000, 0)); // LOD 0 instead of LOD# 1
+			m.restore(start);
+			m.execute(10_000);
+			assertEquals(backend + " code restored", 5050, m.getData(1));
+		}
+	}
+
+	@Test
+	// Forks of block stores share blocks but each sees only its own writes
+	public void testDataStoreForks() {
+		for (Memory.DataBackend backend : new Memory.DataBackend[] {Memory.DataBackend.HEAP, Memory.DataBackend.DIRECT}) {
+			DataStore store = new Memory(MachineConfig.DEFAULT.withDataSize(300).withDataBackend(backend)).getDataStore();
+			int[] expected = new int[300];
+			store.fill(10, 200, 7);
+			Arrays.fill(expected, 10, 210, 7);
+			DataStore fork = store.fork();
+			int[] forked = expected.clone();
+			store.set(70, 1);
+			expected[70] = 1;
+			fork.setAll(60, IntBuffer.wrap(new int[] {5, 6, 7, 8, 9}));
+			System.arraycopy(new int[] {5, 6, 7, 8, 9}, 0, forked, 60, 5);
+			assertArrayEquals(backend + " store", expected, store.copy(0, 300));
+			assertArrayEquals(backend + " fork", forked, fork.copy(0, 300));
+			store.clear();
+			assertArrayEquals(backend + " fork after clear", forked, fork.copy(0, 300));
+			store.set(299, 3);
+			assertEquals(backend + " cleared block", 0, store.get(298));
+			assertEquals(backend + " written", 3, store.get(299));
+			assertEquals(backend + " fork's block", 0, fork.get(299));
+			assertArrayEquals(backend + " copy past the end", new int[] {3, 0}, store.copy(299, 301));
+		}
+	}
+
+	@Test
+	// Clearing code shared with a snapshot leaves the snapshot's code alone
+	public void testClearSharedCode() {
+		loadSumLoop(model, 10);
+		Snapshot start = model.snapshot();
+		model.clear();
+		assertEquals("Cleared", null, model.getCode(0));
+		model.setCode(1, new Instruction((byte)0b00010001, 0));
+		model.restore(start);
+		assertEquals("Snapshot's code", 3, model.getCode(0).opcode/8);
+		assertEquals("Snapshot's jump", 11, model.getCode(1).opcode/8);
+		model.setData(0, 10);
+		model.execute(10_000);
+		assertEquals("Runs", 55, model.getData(1));
+	}
+
+	@Test
+	// A clear straight after a snapshot does not lose the snapshot's code on restore
+	public void testClearThenRestore() {
+		loadSumLoop(model, 10);
+		Snapshot start = model.snapshot();
+		model.clear();
+		model.restore(start);
+		assertEquals("Restored code", 3, model.getCode(0).opcode/8);
+		assertEquals("Restored HALT", 2, model.getCode(9).opcode/8);
+		RunResult result = model.run(10_000);
+		assertEquals("Halted", RunResult.StopReason.HALTED, result.getReason());
+		assertEquals("Runs", 55, model.getData(1));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testRestoreDifferentMachine() {
+		Snapshot small = new MachineModel(() -> {}, new MachineConfig(16, 8)).snapshot();
+		model.restore(small);
+	}
+
+	@Test
+	// A machine on the file of an earlier one carries on where it stopped
+	public void testMappedDataResume() {
+		File file = tempFile();
+		MachineConfig config = MachineConfig.DEFAULT.withDataFile(file).withSyncSteps(50);
+		MachineModel first = new MachineModel(() -> {}, config);
+		loadSumLoop(first, 100);
+		first.execute(305);
+		int pc = first.getPC();
+		int accum = first.getAccum();
+		int sum = first.getData(1);
+		first.sync();
+		first.step();
+		first.step();
+		MachineModel resumed = new MachineModel(() -> {}, config);
+		assertEquals("Data resumed", sum, resumed.getData(1));
+		assertEquals("pc resumed", pc, resumed.getPC());
+		assertEquals("accum resumed", accum, resumed.getAccum());
+		assertTrue("Stepped on past the sync", first.getPC() != pc);
+		assertTrue("Stopped part way", sum > 0 && sum < 5050);
+		for (int i = 0; i < 10; i++) resumed.setCode(i, first.getCode(i));
+		resumed.execute(Long.MAX_VALUE);
+		assertEquals("Sum computed", 5050, resumed.getData(1));
+		assertEquals("File size", MappedDataStore.HEADER_SIZE + 4 * Memory.DATA_SIZE, file.length());
+	}
+
+	@Test
+	// Machines attached to one shared file see each other's writes
+	public void testSharedData() {
+		MachineConfig config = MachineConfig.DEFAULT.withSharedDataFile(tempFile());
+		MachineModel worker = new MachineModel(() -> {}, config);
+		MachineModel watcher = new MachineModel(() -> {}, config);
+		loadSumLoop(worker, 100);
+		assertEquals("Count seen", 100, watcher.getData(0));
+		worker.execute(Long.MAX_VALUE);
+		assertEquals("Sum seen", 5050, watcher.getData(1));
+		watcher.setData(511, -1);
+		assertEquals("Seen both ways", -1, worker.getData(511));
+		assertEquals("Own pc", 0, watcher.getPC());
+		watcher.clear();
+		assertEquals("Clearing one machine keeps the data", 5050, worker.getData(1));
+		watcher.clearSharedData();
+		assertEquals("Cleared for everyone", 0, worker.getData(1));
+	}
+
+	@Test
+	// Machines in one JVM can attach to a shared file at the same time
+	public void testSharedDataConcurrentOpen() throws InterruptedException {
+		MachineConfig config = MachineConfig.DEFAULT.withSharedDataFile(tempFile());
+		List<Thread> threads = new ArrayList<>();
+		List<Throwable> errors = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			Thread thread = new Thread(() -> {
+				try {
+					for (int i = 0; i < 200; i++) new MachineModel(() -> {}, config);
+				} catch (Throwable e) {
+					synchronized (errors) {
+						errors.add(e);
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) thread.join();
+		assertEquals("Errors", "[]", errors.toString());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testMappedDataWrongSize() {
+		File file = tempFile();
+		new MachineModel(() -> {}, MachineConfig.DEFAULT.withDataFile(file));
+		new MachineModel(() -> {}, MachineConfig.DEFAULT.withDataFile(file).withDataSize(100));
+	}
+
+	@Test
+	// The loader decodes the mapped file into the same code and data as loadSumLoop
+	public void testLoaderMapped() {
+		File pexe = assembleSumLoop();
+		MachineModel loaded = new MachineModel(() -> {});
+		assertEquals("Loaded", "success", Loader.load(loaded, pexe));
+		loadSumLoop(model, 100);
+		for (int i = 0; i < 10; i++) {
+			assertEquals("Opcode " + i, model.getCode(i).opcode, loaded.getCode(i).opcode);
+			assertEquals("Arg " + i, model.getCode(i).arg, loaded.getCode(i).arg);
+		}
+		assertEquals("Count", 100, loaded.getData(0));
+		loaded.execute(Long.MAX_VALUE);
+		assertEquals("Sum computed", 5050, loaded.getData(1));
+		assertEquals("Missing file", "File " + pexe.getName() + "x Not Found",
+				Loader.load(loaded, new File(pexe.getPath() + "x")));
+	}
+
+	@Test
+	// Programs in the original format, an opcode stream ended by -1 and then
+	// address/value pairs, still load
+	public void testLoaderOriginalFormat() throws IOException {
+		loadSumLoop(model, 100);
+		ByteBuffer buff = ByteBuffer.allocate(100);
+		for (int i = 0; i < 10; i++) {
+			Instruction instr = model.getCode(i);
+			buff.put(instr.opcode);
+			if (!Instruction.noArgument(instr)) buff.putInt(instr.arg);
+		}
+		buff.put((byte)-1).putInt(0).putInt(100).putInt(1).putInt(0);
+		File pexe = tempFile();
+		Files.write(pexe.toPath(), Arrays.copyOf(buff.array(), buff.position()));
+		MachineModel loaded = new MachineModel(() -> {});
+		assertEquals("Loaded", "success", Loader.load(loaded, pexe));
+		loaded.execute(Long.MAX_VALUE);
+		assertEquals("Sum computed", 5050, loaded.getData(1));
+	}
+
+	@Test
+	// A damaged program is refused before any of it is loaded
+	public void testLoaderChecksum() throws IOException {
+		File pexe = assembleSumLoop();
+		byte[] bytes = Files.readAllBytes(pexe.toPath());
+		assertEquals("Sectioned", PexeFormat.MAGIC, ByteBuffer.wrap(bytes).getInt());
+		bytes[PexeFormat.HEADER_SIZE + 2] ^= 1;
+		Files.write(pexe.toPath(), bytes);
+		MachineModel loaded = new MachineModel(() -> {});
+		assertEquals("Refused", "Program " + pexe.getName() + " is corrupted (checksum mismatch)", Loader.load(loaded, pexe));
+		assertTrue("Nothing loaded", loaded.getCode(0) == null);
+	}
+
+	@Test
+	// Data pairs become runs of consecutive cells, a later pair winning
+	public void testPexeDataRuns() {
+		List<Assembler.DataPair> data = Arrays.asList(new Assembler.DataPair(5, 1), new Assembler.DataPair(3, 2),
+				new Assembler.DataPair(4, 3), new Assembler.DataPair(9, 4), new Assembler.DataPair(5, 5));
+		ByteBuffer buff = PexeFormat.encode(Arrays.asList(new Instruction((byte)0b00010001, 0)), data, false);
+		assertEquals("Runs", 2, buff.getInt(PexeFormat.RUN_COUNT));
+		int start = PexeFormat.HEADER_SIZE + buff.getInt(PexeFormat.CODE_BYTES);
+		assertEquals("First run", 3, buff.getInt(start));
+		assertEquals("Its length, doubled", 3 << 1, buff.getInt(start + 4));
+		assertEquals("Later pair wins", 5, buff.getInt(start + 16));
+		assertEquals("Second run", 9, buff.getInt(start + 20));
+	}
+
+	@Test
+	// Fill runs and literal runs give the same memory image as the pairs one at a time
+	public void testPexeFillRuns() {
+		List<Assembler.DataPair> data = new ArrayList<>();
+		for (int i = 0; i < 300; i++) data.add(new Assembler.DataPair(i, i < 100 || i >= 250 ? 7 : i % 3));
+		for (int i = 400; i < 420; i++) data.add(new Assembler.DataPair(i, 0));
+		data.add(new Assembler.DataPair(450, -2));
+		MachineModel expected = new MachineModel(() -> {});
+		for (Assembler.DataPair pair : data) expected.setData(pair.address, pair.value);
+		for (boolean compact : new boolean[] {false, true}) {
+			ByteBuffer buff = PexeFormat.encode(Arrays.asList(new Instruction((byte)0b00010001, 0)), data, compact);
+			assertEquals("Runs", 5, buff.getInt(PexeFormat.RUN_COUNT));
+			MachineModel loaded = new MachineModel(() -> {});
+			loaded.setData(410, 5);
+			assertEquals("Loaded", "success", Loader.load(loaded, writeTemp(buff)));
+			assertArrayEquals("Same image", expected.getData(), loaded.getData());
+		}
+	}
+
+	@Test
+	// Files of version 1, before fill runs, still load
+	public void testPexeVersion1() {
+		ByteBuffer buff = ByteBuffer.allocate(PexeFormat.HEADER_SIZE + 1 + 16);
+		buff.putInt(PexeFormat.MAGIC).putShort((short) 1).putShort((short) 0);
+		buff.putInt(1).putInt(1).putInt(1).putInt(16).putInt(0);
+		buff.put((byte)0b00010001).putInt(10).putInt(2).putInt(3).putInt(4);
+		buff.putInt(PexeFormat.CHECKSUM, PexeFormat.checksum(buff));
+		MachineModel loaded = new MachineModel(() -> {});
+		assertEquals("Loaded", "success", Loader.load(loaded, writeTemp(buff.flip())));
+		assertEquals("First cell", 3, loaded.getData(10));
+		assertEquals("Second cell", 4, loaded.getData(11));
+	}
+
+	@Test
+	// Varints round-trip at the edges of each length
+	public void testPexeVarints() {
+		int[] values = {0, 1, -1, 63, -64, 64, 8191, -8192, 8192, Integer.MAX_VALUE, Integer.MIN_VALUE};
+		ByteBuffer buff = ByteBuffer.allocate(5 * values.length);
+		for (int v : values) PexeFormat.putSigned(buff, v);
+		assertEquals("Short values stay short", 1 + 1 + 1 + 1 + 1 + 2 + 2 + 2 + 3 + 5 + 5, buff.position());
+		buff.flip();
+		for (int v : values) assertEquals("Round trip", v, PexeFormat.getSigned(buff));
+	}
+
+	@Test
+	// A compact program loads as the full one does and is several times smaller
+	public void testPexeCompact() {
+		List<Instruction> code = new ArrayList<>();
+		List<Assembler.DataPair> data = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			code.add(new Instruction((byte)0b00011000, i % 100)); // LOD i % 100
+			data.add(new Assembler.DataPair(2 * i, i - 500));
+		}
+		code.add(new Instruction((byte)0b00010001, 0)); // HALT
+		ByteBuffer full = PexeFormat.encode(code, data, false);
+		ByteBuffer compact = PexeFormat.encode(code, data, true);
+		assertTrue("Several times smaller", compact.limit() * 2 < full.limit());
+		MachineConfig config = MachineConfig.DEFAULT.withCodeSize(2000).withDataSize(2000);
+		MachineModel fromFull = new MachineModel(() -> {}, config);
+		MachineModel fromCompact = new MachineModel(() -> {}, config);
+		assertEquals("Full loaded", "success", Loader.load(fromFull, writeTemp(full)));
+		assertEquals("Compact loaded", "success", Loader.load(fromCompact, writeTemp(compact)));
+		assertArrayEquals("Same data", fromFull.getData(), fromCompact.getData());
+		for (int i = 0; i <= 1000; i++) {
+			assertEquals("Opcode " + i, fromFull.getCode(i).opcode, fromCompact.getCode(i).opcode);
+			assertEquals("Arg " + i, fromFull.getCode(i).arg, fromCompact.getCode(i).arg);
+		}
+		assertEquals("Cell", -1, fromCompact.getData(998));
+	}
+
+	private File writeTemp(ByteBuffer buff) {
+		File file = tempFile();
+		try {
+			Files.write(file.toPath(), Arrays.copyOf(buff.array(), buff.limit()));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return file;
+	}
+
+	@Test
+	// Views read live memory and agree with the copying methods
+	public void testMemoryViews() {
+		loadSumLoop(model, 10);
+		DataView data = model.getDataView(0, 2);
+		CodeView code = model.getCodeView(0, 12);
+		assertEquals("Data before run", 10, data.get(0));
+		model.execute(Long.MAX_VALUE);
+		assertEquals("Data after run", 55, data.get(1));
+		assertEquals("As a copy", Arrays.toString(model.getData(0, 2)), data.toString());
+		Instruction[] copy = model.getCode(0, 12);
+		for (int i = 0; i < code.size(); i++) {
+			assertEquals("Loaded " + i, copy[i] != null, code.hasCode(i));
+			if (copy[i] != null) {
+				assertEquals("Opcode " + i, copy[i].opcode, code.getOpcode(i));
+				assertEquals("Arg " + i, copy[i].arg, code.getArg(i));
+			}
+		}
+	}
+
+	@Test(expected=ArrayIndexOutOfBoundsException.class)
+	public void testDataViewOutOfRange() {
+		model.getDataView(100, 110).get(10);
+	}
+	@Test
+	// A cached reload gives the machine a cold load gave it, even after the program ran
+	public void testProgramCacheReload() {
+		ProgramCache.clear();
+		File pexe = assembleSumLoop();
+		MachineModel cold = new MachineModel(() -> {});
+		assertEquals("Cold", "success", Loader.load(cold, pexe));
+		assertEquals("Miss", "success", ProgramCache.load(model, pexe));
+		model.execute(10_000);
+		assertEquals("Sum", 5050, model.getData(1));
+		long hits = ProgramCache.getMetrics().get("hits");
+		assertEquals("Hit", "success", ProgramCache.load(model, pexe));
+		assertEquals("Hits", hits + 1, (long) ProgramCache.getMetrics().get("hits"));
+		assertEquals("PC", 0, model.getPC());
+		assertArrayEquals("Data", cold.getData(), model.getData());
+		assertEquals("Highlighted cell", cold.getChangedDataIndex(), model.getChangedDataIndex());
+		for (int i = 0; i < model.getCodeSize(); i++) {
+			Instruction a = cold.getCode(i);
+			Instruction b = model.getCode(i);
+			assertEquals("Loaded " + i, a != null, b != null);
+			if (a != null) {
+				assertEquals("Opcode " + i, a.opcode, b.opcode);
+				assertEquals("Arg " + i, a.arg, b.arg);
+			}
+		}
+		model.execute(10_000);
+		assertEquals("Sum again", 5050, model.getData(1));
+		MachineModel other = new MachineModel(() -> {});
+		ProgramCache.load(other, pexe);
+		model.setCode(0, new Instruction((byte)0b00010001, 0));
+		model.decodeCode();
+		other.execute(10_000);
+		assertEquals("Image untouched by another machine", 5050, other.getData(1));
+	}
+
+	@Test
+	// Reload in the GUI clears the machine and then loads from the cache
+	public void testProgramCacheReloadAfterClear() {
+		ProgramCache.clear();
+		File pexe = assembleSumLoop();
+		assertEquals("Miss", "success", ProgramCache.load(model, pexe));
+		model.clear();
+		model.setProgramSize(0);
+		assertEquals("Hit", "success", ProgramCache.load(model, pexe));
+		assertEquals("Code", 3, model.getCode(0).opcode/8);
+		RunResult result = model.run(10_000);
+		assertEquals("Halted", RunResult.StopReason.HALTED, result.getReason());
+		assertEquals("Sum", 5050, model.getData(1));
+	}
+
+	@Test
+	// Changing the file or evicting its entry loads it again
+	public void testProgramCacheMisses() throws IOException {
+		ProgramCache.clear();
+		File pexe = assembleSumLoop();
+		ProgramCache.load(model, pexe);
+		long misses = ProgramCache.getMetrics().get("misses");
+		ByteBuffer buff = PexeFormat.encode(Arrays.asList(new Instruction((byte)0b00011011, 7),
+				new Instruction((byte)0b00010001, 0)), Arrays.asList(new Assembler.DataPair(3, 9)), false);
+		Files.write(pexe.toPath(), Arrays.copyOf(buff.array(), buff.limit()));
+		pexe.setLastModified(pexe.lastModified() + 2000);
+		ProgramCache.load(model, pexe);
+		assertEquals("Changed file", misses + 1, (long) ProgramCache.getMetrics().get("misses"));
+		model.execute(10);
+		assertEquals("New program", 7, model.getAccum());
+		assertEquals("New data", 9, model.getData(3));
+		ProgramCache.setLimit(0);
+		try {
+			assertEquals("Evicted", 0, (long) ProgramCache.getMetrics().get("entries"));
+			ProgramCache.load(model, pexe);
+			assertEquals("Not kept", 0, (long) ProgramCache.getMetrics().get("bytes"));
+		} finally {
+			ProgramCache.setLimit(64L << 20);
+		}
+	}
+}
@@ -1,46 +1,136 @@
 package project;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 import java.util.Scanner;
 
 public class Loader {
 	public static String load(MachineModel model, File program) {
+		return load(model, program, true);
+	}
+	
+	//Loads only the code of program and leaves data memory as it is, to
+	//resume a run whose data memory was mapped from a file
+	public static String loadCode(MachineModel model, File program) {
+		return load(model, program, false);
+	}
+	
+	private static String load(MachineModel model, File program, boolean withData) {
 		if (model == null || program == null) return null;
 		
+		//The file is mapped rather than read into a copy, and each instruction
+		//is decoded from the mapping straight into code memory
 		ByteBuffer buff = null;
-		try (FileInputStream fStream = new FileInputStream(program);
-			FileChannel fChan = fStream.getChannel()) {
-			long fSize = fChan.size();
-			buff = ByteBuffer.allocate((int) fSize);
-			fChan.read(buff);	
+		try (FileChannel fChan = FileChannel.open(program.toPath(), StandardOpenOption.READ)) {
+			buff = fChan.map(FileChannel.MapMode.READ_ONLY, 0, fChan.size());
 		}
-		catch(FileNotFoundException e) {
+		catch(NoSuchFileException e) {
 			return("File " + program.getName() + " Not Found");
 		}
 		catch(IOException e) {
 			return("Unexpected IO exception in loading " + program.getName());
 		}
 		
+		if (buff != null && PexeFormat.isSectioned(buff)) return loadSectioned(model, program, buff, withData);
 		if (buff != null) {
 			buff.rewind();
 			int codeIndex = 0;
 			while (buff.hasRemaining()) {
 				byte b = buff.get();
 				if (b < 0) break;
-				Instruction instr = new Instruction(b, 0);
-				if (!Instruction.noArgument(instr)) instr = new Instruction(b, buff.getInt());
-				model.setCode(codeIndex++, instr);
+				if (codeIndex >= model.getCodeSize()) {
+					return "Program " + program.getName() + " does not fit in " + model.getCodeSize() + " words of code memory";
+				}
+				int arg = Instruction.noArgument(b) ? 0 : buff.getInt();
+				model.setCode(codeIndex++, b, arg);
 			}
-			while (buff.hasRemaining()) {
-				model.setData(buff.getInt(), buff.getInt());
+			String error = verify(model, program.getName());
+			if (error != null) return error;
+			while (withData && buff.hasRemaining()) {
+				int address = buff.getInt();
+				if (address < 0 || address >= model.getDataSize()) {
+					return "Data address " + address + " in " + program.getName() + " is outside data memory";
+				}
+				model.setData(address, buff.getInt());
 			}
 			return "success";
 		}
 		return null;
 	}
+	
+	//Verifies the code just loaded, and returns why it was refused, or null
+	//if it passed
+	private static String verify(MachineModel model, String name) {
+		try {
+			model.verifyCode();
+			return null;
+		} catch (ParityCheckException e) {
+			// getMessage of an IllegalFormatFlagsException wraps the message in "Flags = '...'"
+			return "Program " + name + " failed verification: " + e.getFlags();
+		} catch (IllegalInstructionException | CodeAccessException e) {
+			return "Program " + name + " failed verification: " + e.getMessage();
+		}
+	}
+	
+	//A program in PexeFormat: the whole file is checked before anything is
+	//loaded, and each data run is copied into data memory in one go
+	private static String loadSectioned(MachineModel model, File program, ByteBuffer buff, boolean withData) {
+		String name = program.getName();
+		if (buff.limit() < PexeFormat.HEADER_SIZE) return "Program " + name + " is truncated";
+		short version = buff.getShort(4);
+		if (version > PexeFormat.VERSION) return "Program " + name + " has format version " + version + ", newer than this loader";
+		int codeCount = buff.getInt(PexeFormat.CODE_COUNT);
+		int codeBytes = buff.getInt(PexeFormat.CODE_BYTES);
+		int runs = buff.getInt(PexeFormat.RUN_COUNT);
+		int dataBytes = buff.getInt(PexeFormat.DATA_BYTES);
+		if (codeBytes < 0 || dataBytes < 0 || (long) PexeFormat.HEADER_SIZE + codeBytes + dataBytes != buff.limit()) {
+			return "Program " + name + " is truncated";
+		}
+		if (buff.getInt(PexeFormat.CHECKSUM) != PexeFormat.checksum(buff)) {
+			return "Program " + name + " is corrupted (checksum mismatch)";
+		}
+		if (codeCount > model.getCodeSize()) {
+			return "Program " + name + " does not fit in " + model.getCodeSize() + " words of code memory";
+		}
+		boolean compact = (buff.getShort(6) & PexeFormat.COMPACT) != 0;
+		buff.position(PexeFormat.HEADER_SIZE);
+		for (int i = 0; i < codeCount; i++) {
+			byte b = buff.get();
+			int arg = Instruction.noArgument(b) ? 0 : compact ? PexeFormat.getSigned(buff) : buff.getInt();
+			model.setCode(i, b, arg);
+		}
+		String error = verify(model, name);
+		if (error != null) return error;
+		buff.position(PexeFormat.HEADER_SIZE + codeBytes);
+		int end = 0;
+		for (int r = 0; withData && r < runs; r++) {
+			int address = compact ? end + PexeFormat.getSigned(buff) : buff.getInt();
+			int length = compact ? PexeFormat.getUnsigned(buff) : buff.getInt();
+			boolean fill = false;
+			if (version >= 3) {
+				fill = (length & 1) != 0;
+				length >>>= 1;
+			}
+			if (address < 0 || length < 0 || length > model.getDataSize() - address) {
+				return "Data address " + address + " in " + name + " is outside data memory";
+			}
+			if (fill) {
+				model.fillData(address, length, compact ? PexeFormat.getSigned(buff) : buff.getInt());
+			} else if (compact) {
+				int[] cells = new int[length];
+				for (int k = 0; k < length; k++) cells[k] = PexeFormat.getSigned(buff);
+				model.setData(address, IntBuffer.wrap(cells));
+			} else {
+				model.setData(address, buff.slice(buff.position(), 4*length).asIntBuffer());
+				buff.position(buff.position() + 4*length);
+			}
+			end = address + length;
+		}
+		return "success";
+	}
 }
@@ -0,0 +1,115 @@
+package project;
+
+import java.io.File;
+
+//The shape of one machine: the sizes of data and code memory, where data
+//memory is kept and the engine that runs it. A config does not change; the
+//with methods return a changed copy. DEFAULT is the machine the simulator
+//has always had, 512 words of data and 256 of code on the heap.
+public class MachineConfig {
+	public static final MachineConfig DEFAULT = new MachineConfig(Memory.DATA_SIZE, Memory.CODE_SIZE);
+	private final int dataSize;
+	private final int codeSize;
+	private final Memory.DataBackend dataBackend;
+	private final String engine;
+	private final File dataFile;
+	private final long syncSteps;
+
+	public MachineConfig(int dataSize, int codeSize) {
+		this(dataSize, codeSize, Memory.DataBackend.HEAP, "interpreter", null, 10_000_000);
+	}
+
+	private MachineConfig(int dataSize, int codeSize, Memory.DataBackend dataBackend, String engine,
+			File dataFile, long syncSteps) {
+		if (dataSize <= 0) throw new IllegalArgumentException("Data memory needs at least one word: " + dataSize);
+		if (codeSize <= 0) throw new IllegalArgumentException("Code memory needs at least one word: " + codeSize);
+		if ((dataBackend == Memory.DataBackend.MAPPED || dataBackend == Memory.DataBackend.SHARED) && dataFile == null) {
+			throw new IllegalArgumentException(dataBackend + " data memory needs a file");
+		}
+		if (syncSteps <= 0) throw new IllegalArgumentException("Sync interval must be positive: " + syncSteps);
+		this.dataSize = dataSize;
+		this.codeSize = codeSize;
+		this.dataBackend = dataBackend;
+		this.engine = engine;
+		this.dataFile = dataFile;
+		this.syncSteps = syncSteps;
+	}
+
+	//DEFAULT changed by the system properties pippin.dataSize, pippin.codeSize,
+	//pippin.data (heap, direct, paged, mapped or shared), pippin.engine, and
+	//pippin.dataFile and pippin.syncSteps for data memory mapped from a file.
+	//Naming a file alone chooses mapped.
+	public static MachineConfig fromProperties() {
+		String file = System.getProperty("pippin.dataFile");
+		Memory.DataBackend backend = Memory.DataBackend.valueOf(
+				System.getProperty("pippin.data", file != null ? "mapped" : "heap").toUpperCase());
+		return new MachineConfig(Integer.getInteger("pippin.dataSize", Memory.DATA_SIZE),
+				Integer.getInteger("pippin.codeSize", Memory.CODE_SIZE),
+				backend,
+				System.getProperty("pippin.engine", "interpreter"),
+				file != null ? new File(file) : null,
+				Long.getLong("pippin.syncSteps", DEFAULT.syncSteps));
+	}
+
+	public int getDataSize() {
+		return dataSize;
+	}
+	public int getCodeSize() {
+		return codeSize;
+	}
+	public Memory.DataBackend getDataBackend() {
+		return dataBackend;
+	}
+	public String getEngine() {
+		return engine;
+	}
+	//The file of MAPPED or SHARED data memory
+	public File getDataFile() {
+		return dataFile;
+	}
+	//Instructions between syncs of MAPPED data memory to its file (see
+	//MachineModel.sync)
+	public long getSyncSteps() {
+		return syncSteps;
+	}
+
+	public MachineConfig withDataSize(int size) {
+		return new MachineConfig(size, codeSize, dataBackend, engine, dataFile, syncSteps);
+	}
+	public MachineConfig withCodeSize(int size) {
+		return new MachineConfig(dataSize, size, dataBackend, engine, dataFile, syncSteps);
+	}
+	public MachineConfig withDataBackend(Memory.DataBackend backend) {
+		return new MachineConfig(dataSize, codeSize, backend, engine, dataFile, syncSteps);
+	}
+	public MachineConfig withEngine(String name) {
+		return new MachineConfig(dataSize, codeSize, dataBackend, name, dataFile, syncSteps);
+	}
+	//Keeps data memory in file, mapped into memory (the MAPPED backend). A
+	//machine made later with the same file resumes from the last sync. This
+	//is best-effort, not a consistent checkpoint: cells written after the
+	//sync are kept, so the resumed run repeats up to getSyncSteps()
+	//instructions over memory they may already have changed, and a crash
+	//while forcing the file can leave the header and cells from different
+	//moments. Callers that need an exact restart point can call
+	//MachineModel.sync() there.
+	public MachineConfig withDataFile(File file) {
+		return new MachineConfig(dataSize, codeSize, Memory.DataBackend.MAPPED, engine, file, syncSteps);
+	}
+	//Keeps data memory in file, mapped into memory and shared with any other
+	//machine, in this JVM or another, made with the same file (the SHARED
+	//backend). Clearing a machine leaves shared data memory alone; see
+	//MachineModel.clearSharedData.
+	public MachineConfig withSharedDataFile(File file) {
+		return new MachineConfig(dataSize, codeSize, Memory.DataBackend.SHARED, engine, file, syncSteps);
+	}
+	public MachineConfig withSyncSteps(long steps) {
+		return new MachineConfig(dataSize, codeSize, dataBackend, engine, dataFile, steps);
+	}
+
+	@Override
+	public String toString() {
+		return "MachineConfig [data " + dataSize + " " + dataBackend
+				+ (dataFile != null ? " " + dataFile : "") + ", code " + codeSize + ", " + engine + "]";
+	}
+}
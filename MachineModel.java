@@ -1,21 +1,55 @@
 package project;
 
 import static project.Instruction.*;
+import java.nio.IntBuffer;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 public class MachineModel {
 	public final Map<Integer, Consumer<Instruction>> ACTION = new TreeMap<>();
 	private CPU cpu = new CPU();
-	private Memory memory = new Memory();
+	private final MachineConfig config;
+	private Memory memory;
+	// the data file when data memory is MAPPED, otherwise null; a SHARED file
+	// holds no pc or accum and needs no syncing
+	private final MappedDataStore mapped;
+	// instructions run since mapped was last synced
+	private long unsynced;
 	private HaltCallback callBack;
+	private boolean halted;
+	private long faultSteps;
+	private final Map<String, ExecutionEngine> engines = new TreeMap<>();
+	private String engineName;
+	private ExecutionEngine engine;
+	
+	//Factories of the engines that execute() can use, by name. The default
+	//is the one named by the system property pippin.engine, or interpreter.
+	private static final Map<String, Function<MachineModel, ExecutionEngine>> ENGINES = new TreeMap<>();
+	static {
+		ENGINES.put("interpreter", model -> model::interpret);
+		ENGINES.put("action", model -> model::runActions);
+		ENGINES.put("closure", ClosureEngine::new);
+		ENGINES.put("bytecode", BytecodeEngine::new);
+		ENGINES.put("tiered", TieredEngine::new);
+		ENGINES.put("trace", TraceEngine::new);
+	}
 
 	//Delegate Methods
 	public void setData(int i, int j) {
 		memory.setData(i, j);
 	}
+	void setData(int start, IntBuffer values) {
+		memory.setData(start, values);
+	}
+	void fillData(int start, int length, int value) {
+		memory.fillData(start, length, value);
+	}
 	public int getPC() {
 		return cpu.pc;
 	}
@@ -43,49 +77,517 @@ public class MachineModel {
 	public void setCode(int i, Instruction j) {
 		memory.setCode(i, j);
 	}
+	public void setCode(int i, byte opcode, int arg) {
+		memory.setCode(i, opcode, arg);
+	}
 	public Instruction[] getCode() {
 		return memory.getCode();
 	}
 	public Instruction[] getCode(int min, int max) {
 		return memory.getCode(min, max);
 	}
+	//Read-only views of live memory that copy nothing; see DataView and CodeView
+	public DataView getDataView(int min, int max) {
+		return new DataView(memory, min, max);
+	}
+	public CodeView getCodeView(int min, int max) {
+		return new CodeView(memory, min, max);
+	}
+	public MachineConfig getConfig() {
+		return config;
+	}
+	public int getDataSize() {
+		return memory.getDataSize();
+	}
+	public int getCodeSize() {
+		return memory.getCodeSize();
+	}
 	public int getProgramSize() {
 		return memory.getProgramSize();
 	}
 	public int getChangedDataIndex() {
 		return memory.getChangedDataIndex();
 	}
+	public int nextDirtyPage(int from) {
+		return memory.nextDirtyPage(from);
+	}
+	public void resetDirtyPages() {
+		memory.resetDirtyPages();
+	}
 	public void setProgramSize(int i) {
 		memory.setProgramSize(i);
 	}
+	void decodeCode() {
+		memory.decodeCode();
+	}
+	void verifyCode() {
+		memory.verifyCode();
+	}
+	public boolean isVerified() {
+		return memory.isVerified();
+	}
+	Memory getMemory() {
+		return memory;
+	}
+	public int getCodeVersion() {
+		return memory.getCodeVersion();
+	}
+	
+	public static void registerEngine(String name, Function<MachineModel, ExecutionEngine> factory) {
+		synchronized (ENGINES) {
+			ENGINES.put(name, factory);
+		}
+	}
+	public static Set<String> getEngineNames() {
+		synchronized (ENGINES) {
+			return new TreeSet<>(ENGINES.keySet());
+		}
+	}
+	public String getEngineName() {
+		return engineName;
+	}
+	//Chooses the engine execute() uses. An engine is made the first time it
+	//is chosen and kept, with whatever it has compiled, for the next time.
+	public void setEngine(String name) {
+		ExecutionEngine e = engines.get(name);
+		if (e == null) {
+			Function<MachineModel, ExecutionEngine> factory;
+			synchronized (ENGINES) {
+				factory = ENGINES.get(name);
+			}
+			if (factory == null) throw new IllegalArgumentException("Unknown execution engine: " + name);
+			e = factory.apply(this);
+			engines.put(name, e);
+		}
+		engineName = name;
+		engine = e;
+	}
+	//Counters of the current engine, e.g. for tiered the promotion thresholds
+	//and the steps each tier has run, and for trace the guard failures per
+	//trace (keyed by the pc of the loop header)
+	public Map<String, Long> getEngineMetrics() {
+		return engine.getMetrics();
+	}
+	//Superinstructions run since the program was last decoded, by name
+	public Map<String, Long> getFusionReport() {
+		return memory.getFusionReport();
+	}
+	
+	//Captures code, data, accum and pc. Memory is shared with the snapshot
+	//and copied a block or page at a time as either side writes it (see
+	//Memory.fork), except MAPPED and SHARED data memory, which stays in its
+	//file and is copied whole.
+	public Snapshot snapshot() {
+		return new Snapshot(config, memory.fork(), cpu.accum, cpu.pc);
+	}
+	//Puts the machine back in the state of a snapshot of a machine of the
+	//same sizes and data backend
+	public void restore(Snapshot snapshot) {
+		MachineConfig c = snapshot.config;
+		if (c.getDataSize() != config.getDataSize() || c.getCodeSize() != config.getCodeSize()
+				|| c.getDataBackend() != config.getDataBackend()) {
+			throw new IllegalArgumentException("Snapshot of a different machine: " + c);
+		}
+		memory.restore(snapshot.memory);
+		cpu.accum = snapshot.accum;
+		cpu.pc = snapshot.pc;
+	}
+	//A new machine in the state of this one, with the same callback and
+	//engine, that can then run independently of it. Memory is shared as it
+	//is with a snapshot.
+	public MachineModel fork() {
+		MachineModel copy = new MachineModel(callBack, config.withEngine(engineName), memory.fork());
+		copy.cpu.accum = cpu.accum;
+		copy.cpu.pc = cpu.pc;
+		return copy;
+	}
 	
-	//Organizing method
+	//Organizing method. SHARED data memory is left as it is, since other
+	//machines are using it.
 	public void clear() {
 		memory.clearData();
 		memory.clearCode();
 		cpu.accum = 0;
 		cpu.pc = 0;
 	}
+	//Zeroes data memory, including SHARED data memory for every machine
+	//attached to its file
+	public void clearSharedData() {
+		memory.clearSharedData();
+	}
 	
 	//Method that drives the execution of instructions
 	public void step() {
+		execute(1);
+	}
+	
+	//Runs instructions until HALT or until maxSteps instructions have executed
+	//and returns the number executed, using the engine chosen by setEngine.
+	//MAPPED data memory is synced to its file every config.getSyncSteps()
+	//instructions, counted across calls, and when the program halts or faults.
+	public long execute(long maxSteps) {
+		halted = false;
+		faultSteps = 0;
+		if (mapped == null) return engine.execute(maxSteps);
+		long steps = 0;
+		try {
+			while (steps < maxSteps && !halted) {
+				long n = engine.execute(Math.min(maxSteps - steps, config.getSyncSteps() - unsynced));
+				steps += n;
+				unsynced += n;
+				if (unsynced >= config.getSyncSteps()) sync();
+			}
+		} catch (RuntimeException e) {
+			fault(steps);
+			sync();
+			throw e;
+		}
+		if (halted) sync();
+		return steps;
+	}
+	
+	//Writes pc and accum to the header of MAPPED data memory's file and forces
+	//the file to disk, e.g. before the machine is put aside part way through
+	//a run. Other backends have nothing to sync.
+	public void sync() {
+		if (mapped == null) return;
+		mapped.sync(cpu.pc, cpu.accum);
+		unsynced = 0;
+	}
+	
+	//Runs up to maxSteps instructions like execute, but reports a fault in the
+	//result instead of throwing it (see RunResult.throwIfFault)
+	public RunResult run(long maxSteps) {
+		try {
+			long steps = execute(maxSteps);
+			return new RunResult(halted ? RunResult.StopReason.HALTED : RunResult.StopReason.BUDGET_EXHAUSTED,
+					cpu.pc, steps, null);
+		} catch (RuntimeException e) {
+			return new RunResult(stopReason(e), cpu.pc, faultSteps, e);
+		}
+	}
+	
+	//Runs one instruction at a time until condition holds before the next
+	//one, the program stops, or maxSteps instructions have executed
+	public RunResult runUntil(Predicate<MachineModel> condition, long maxSteps) {
+		long steps = 0;
+		try {
+			while (true) {
+				if (condition.test(this)) return new RunResult(RunResult.StopReason.CONDITION_MET, cpu.pc, steps, null);
+				if (steps >= maxSteps) return new RunResult(RunResult.StopReason.BUDGET_EXHAUSTED, cpu.pc, steps, null);
+				steps += execute(1);
+				if (halted) return new RunResult(RunResult.StopReason.HALTED, cpu.pc, steps, null);
+			}
+		} catch (RuntimeException e) {
+			return new RunResult(stopReason(e), cpu.pc, steps, e);
+		}
+	}
+	public RunResult runUntil(Predicate<MachineModel> condition) {
+		return runUntil(condition, Long.MAX_VALUE);
+	}
+	
+	//Which fault e is, given that pc is left at the faulting instruction.
+	//Anything that is not a fault of the program is thrown on.
+	private RunResult.StopReason stopReason(RuntimeException e) {
+		if (e instanceof DivideByZeroException) return RunResult.StopReason.DIVIDE_BY_ZERO;
+		if (e instanceof ParityCheckException) return RunResult.StopReason.PARITY;
+		if (e instanceof IllegalInstructionException) return RunResult.StopReason.ILLEGAL_INSTRUCTION;
+		if (e instanceof CodeAccessException) return RunResult.StopReason.CODE_ACCESS;
+		int pc = cpu.pc;
+		if (pc < 0 || pc >= memory.getCodeSize() || !memory.hasCode(pc)) return RunResult.StopReason.CODE_ACCESS;
+		if (e instanceof ArrayIndexOutOfBoundsException) return RunResult.StopReason.DATA_OUT_OF_RANGE;
+		throw e;
+	}
+	
+	//The interpreter. Code memory is pre-decoded into one micro-op per opcode
+	//and addressing mode (see Decoder), and the switch gives the same results
+	//as the ACTION lambdas but keeps accum and pc in locals, writing them back
+	//to the CPU only on exit or on a fault. Inside a verified program the
+	//instruction is fetched without the checks of getFusedOp and getOpArg.
+	long interpret(long maxSteps) {
+		int accum = cpu.accum;
+		int pc = cpu.pc;
+		long steps = 0;
+		int verifiedSize = memory.isVerified() ? Math.min(memory.getProgramSize(), memory.getCodeSize() - 1) : -1;
 		try {
-			Instruction instr = getCode(cpu.pc);
-			Instruction.checkParity(instr);
-			ACTION.get(instr.opcode/8).accept(instr);
+			while (steps < maxSteps) {
+				int op;
+				int arg;
+				if (pc >= 0 && pc <= verifiedSize && (op = memory.getVerifiedOp(pc)) != Decoder.UNDECODED) {
+					arg = memory.getVerifiedArg(pc);
+				} else {
+					op = memory.getFusedOp(pc);
+					arg = memory.getOpArg(pc);
+				}
+				if (op >= Decoder.FUSED) {
+					if (maxSteps - steps < Fusion.get(op).pattern.length) op = memory.getOp(pc);
+					else memory.fusionFired(op);
+				}
+				switch (op) {
+				case Decoder.NOP:
+					pc++;
+					break;
+				case Decoder.NOT:
+					accum = accum == 0 ? 1 : 0;
+					pc++;
+					break;
+				case Decoder.HALT:
+					cpu.accum = accum;
+					cpu.pc = pc;
+					halt();
+					return steps + 1;
+				case Decoder.LOD_DIRECT:
+					accum = memory.getData(arg);
+					pc++;
+					break;
+				case Decoder.LOD_IMMEDIATE:
+					accum = arg;
+					pc++;
+					break;
+				case Decoder.LOD_INDIRECT:
+					accum = memory.getData(memory.getData(arg));
+					pc++;
+					break;
+				case Decoder.STO_DIRECT:
+					memory.setData(arg, accum);
+					pc++;
+					break;
+				case Decoder.STO_INDIRECT:
+					memory.setData(memory.getData(arg), accum);
+					pc++;
+					break;
+				case Decoder.ADD_DIRECT:
+					accum += memory.getData(arg);
+					pc++;
+					break;
+				case Decoder.ADD_IMMEDIATE:
+					accum += arg;
+					pc++;
+					break;
+				case Decoder.ADD_INDIRECT:
+					accum += memory.getData(memory.getData(arg));
+					pc++;
+					break;
+				case Decoder.SUB_DIRECT:
+					accum -= memory.getData(arg);
+					pc++;
+					break;
+				case Decoder.SUB_IMMEDIATE:
+					accum -= arg;
+					pc++;
+					break;
+				case Decoder.SUB_INDIRECT:
+					accum -= memory.getData(memory.getData(arg));
+					pc++;
+					break;
+				case Decoder.MUL_DIRECT:
+					accum *= memory.getData(arg);
+					pc++;
+					break;
+				case Decoder.MUL_IMMEDIATE:
+					accum *= arg;
+					pc++;
+					break;
+				case Decoder.MUL_INDIRECT:
+					accum *= memory.getData(memory.getData(arg));
+					pc++;
+					break;
+				case Decoder.DIV_DIRECT:
+					accum = divide(accum, memory.getData(arg));
+					pc++;
+					break;
+				case Decoder.DIV_IMMEDIATE:
+					accum = divide(accum, arg);
+					pc++;
+					break;
+				case Decoder.DIV_INDIRECT:
+					accum = divide(accum, memory.getData(memory.getData(arg)));
+					pc++;
+					break;
+				case Decoder.AND_DIRECT:
+					accum = accum != 0 && memory.getData(arg) != 0 ? 1 : 0;
+					pc++;
+					break;
+				case Decoder.AND_IMMEDIATE:
+					accum = accum != 0 && arg != 0 ? 1 : 0;
+					pc++;
+					break;
+				case Decoder.JUMP_RELATIVE:
+					pc += arg;
+					break;
+				case Decoder.JUMP_ABSOLUTE:
+					pc = arg;
+					break;
+				case Decoder.JUMP_INDIRECT_RELATIVE:
+					pc += memory.getData(arg);
+					break;
+				case Decoder.JUMP_INDIRECT_ABSOLUTE:
+					pc = memory.getData(arg);
+					break;
+				case Decoder.JMPZ_RELATIVE:
+					if (accum == 0) pc += arg;
+					else pc++;
+					break;
+				case Decoder.JMPZ_ABSOLUTE:
+					if (accum == 0) pc = arg;
+					else pc++;
+					break;
+				case Decoder.JMPZ_INDIRECT_RELATIVE:
+					if (accum == 0) pc += memory.getData(arg);
+					else pc++;
+					break;
+				case Decoder.JMPZ_INDIRECT_ABSOLUTE:
+					if (accum == 0) pc = memory.getData(arg);
+					else pc++;
+					break;
+				case Decoder.CMPL:
+					accum = memory.getData(arg) < 0 ? 1 : 0;
+					pc++;
+					break;
+				case Decoder.CMPZ:
+					accum = memory.getData(arg) == 0 ? 1 : 0;
+					pc++;
+					break;
+				case Decoder.FUSED_INCREMENT: // LOD x / ADD #k / STO x
+					accum = memory.getData(arg) + memory.getOpArg(pc + 1);
+					memory.setData(arg, accum);
+					pc += 3;
+					steps += 2;
+					break;
+				case Decoder.FUSED_DECREMENT: // LOD x / SUB #k / STO x
+					accum = memory.getData(arg) - memory.getOpArg(pc + 1);
+					memory.setData(arg, accum);
+					pc += 3;
+					steps += 2;
+					break;
+				case Decoder.FUSED_CMPZ_JMPZ_RELATIVE: // CMPZ x / JMPZ n
+					accum = memory.getData(arg) == 0 ? 1 : 0;
+					pc = accum == 0 ? pc + 1 + memory.getOpArg(pc + 1) : pc + 2;
+					steps++;
+					break;
+				case Decoder.FUSED_CMPZ_JMPZ_ABSOLUTE: // CMPZ x / JMPZ #n
+					accum = memory.getData(arg) == 0 ? 1 : 0;
+					pc = accum == 0 ? memory.getOpArg(pc + 1) : pc + 2;
+					steps++;
+					break;
+				case Decoder.FUSED_MOVE: // LOD x / STO y
+					accum = memory.getData(arg);
+					pc++;
+					steps++;
+					memory.setData(memory.getOpArg(pc), accum);
+					pc++;
+					break;
+				case Decoder.FUSED_MOVE_INDIRECT: // LOD @p / STO @q
+					accum = memory.getData(memory.getData(arg));
+					pc++;
+					steps++;
+					memory.setData(memory.getData(memory.getOpArg(pc)), accum);
+					pc++;
+					break;
+				case Decoder.BAD_PARITY:
+					Instruction.checkParity(memory.getCode(pc));
+					break;
+				case Decoder.BAD_FLAGS:
+					throw illegalFlags(memory.getOpcode(pc) & 6);
+				default:
+					cpu.accum = accum;
+					cpu.pc = pc;
+					if (op >= Decoder.FUSED) { // a registered superinstruction
+						Fusion fusion = Fusion.get(op);
+						fusion.handler.run(this);
+						steps += fusion.pattern.length - 1;
+					} else { // anything else goes through the ACTION table
+						Instruction instr = memory.getCode(pc);
+						ACTION.get(instr.opcode/8).accept(instr);
+					}
+					accum = cpu.accum;
+					pc = cpu.pc;
+				}
+				steps++;
+			}
 		}
 		catch(Exception e) {
+			cpu.accum = accum;
+			cpu.pc = pc;
+			fault(steps);
+			halt();
+			throw e;
+		}
+		cpu.accum = accum;
+		cpu.pc = pc;
+		return steps;
+	}
+	
+	private static int divide(int accum, int divisor) {
+		if (divisor == 0) throw new DivideByZeroException("Cannot divide by zero.");
+		return accum / divisor;
+	}
+	
+	private static IllegalInstructionException illegalFlags(int flags) {
+		String fString = "(" + (flags%8 > 3?"1":"0") + (flags%4 > 1?"1":"0") + ")";
+		return new IllegalInstructionException("Illegal flags for this instruction: " + fString);
+	}
+	
+	//The action engine: each instruction through the ACTION table, as the
+	//simulator originally ran
+	long runActions(long maxSteps) {
+		long steps = 0;
+		try {
+			while (steps < maxSteps && !halted) {
+				Instruction instr = memory.getCode(cpu.pc);
+				Instruction.checkParity(instr);
+				ACTION.get(instr.opcode/8).accept(instr);
+				steps++;
+			}
+		} catch (Exception e) {
+			fault(steps);
 			halt();
 			throw e;
 		}
+		return steps;
 	}
 	
-	void halt() {
+	public void halt() {
+		halted = true;
 		callBack.halt();
 	}
 	
+	//Called with the steps it had run by each engine that a fault passes
+	//through on its way out of execute, so run() can report the total
+	public void fault(long steps) {
+		faultSteps += steps;
+	}
+	
+	//True once the current call to execute has reached HALT or a fault
+	boolean isHalted() {
+		return halted;
+	}
+	
+	//A machine configured by the system properties (see MachineConfig.fromProperties)
 	public MachineModel(HaltCallback call) {
+		this(call, MachineConfig.fromProperties());
+	}
+	
+	public MachineModel(HaltCallback call, String engineName) {
+		this(call, MachineConfig.fromProperties().withEngine(engineName));
+	}
+	
+	public MachineModel(HaltCallback call, MachineConfig config) {
+		this(call, config, new Memory(config));
+	}
+	
+	private MachineModel(HaltCallback call, MachineConfig config, Memory memory) {
 		callBack = call;
+		this.config = config;
+		this.memory = memory;
+		setEngine(config.getEngine());
+		DataStore data = memory.getDataStore();
+		mapped = config.getDataBackend() == Memory.DataBackend.MAPPED && data instanceof MappedDataStore
+				? (MappedDataStore) data : null;
+		if (mapped != null && mapped.isResumed()) {
+			cpu.pc = mapped.getPC();
+			cpu.accum = mapped.getAccum();
+		}
 		
 		//ACTION entry for "NOP"
 		ACTION.put(OPCODES.get("NOP"), instr -> {
@@ -0,0 +1,139 @@
+package project;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+
+//Data memory in a file mapped into memory, for long runs. Every write goes
+//straight to the file's pages, so data memory survives the JVM crashing and
+//other tools can read the file while the program runs. The file starts with
+//a header, then holds the cells as big-endian ints:
+//
+//  0  magic "PIPM"   4  version   8  number of cells   12  pc   16  accum
+//
+//MachineModel writes pc and accum to the header and forces the file to disk
+//every MachineConfig.getSyncSteps() instructions, when the program halts or
+//faults, and on MachineModel.sync(). Opening a file that already holds data
+//memory of the same size resumes it: the cells are kept and the machine
+//starts from the header's pc and accum. Resuming is best-effort (see
+//MachineConfig.withDataFile).
+class MappedDataStore implements DataStore {
+	static final int MAGIC = 0x5049504D;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 32;
+	private static final int SIZE = 8;
+	private static final int PC = 12;
+	private static final int ACCUM = 16;
+	private static final int[] ZEROS = new int[1024];
+	private static final Object OPENING = new Object();
+	final MappedByteBuffer buffer;
+	final IntBuffer cells;
+	final int size;
+	private final boolean resumed;
+
+	MappedDataStore(File file, int size) {
+		this.size = size;
+		long length = HEADER_SIZE + 4L*size;
+		if (length > Integer.MAX_VALUE) throw new IllegalArgumentException("Too much data memory to map: " + size);
+		try (FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			// stops another JVM opening the file while its header is written. A
+			// JVM may hold only one lock on a file, so machines in this JVM take
+			// turns through OPENING.
+			synchronized (OPENING) {
+				FileLock lock = channel.lock();
+				try {
+					resumed = channel.size() > 0;
+					if (resumed && channel.size() != length) {
+						throw new IllegalArgumentException(file + " does not hold " + size + " words of data memory");
+					}
+					buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+					if (!resumed) {
+						buffer.putInt(0, MAGIC);
+						buffer.putInt(4, VERSION);
+						buffer.putInt(SIZE, size);
+					} else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(SIZE) != size) {
+						throw new IllegalArgumentException(file + " does not hold " + size + " words of data memory");
+					}
+				} finally {
+					lock.release();
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot map " + file, e);
+		}
+		cells = buffer.slice(HEADER_SIZE, 4*size).asIntBuffer();
+	}
+
+	public int get(int index) {
+		check(index);
+		return cells.get(index);
+	}
+
+	public void set(int index, int value) {
+		check(index);
+		cells.put(index, value);
+	}
+
+	public void setAll(int start, IntBuffer values) {
+		int length = values.remaining();
+		DataStore.checkRange(start, length, size);
+		cells.put(start, values, values.position(), length);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	//The cells are the file itself, which a later open must read as zeros, so
+	//unlike the other stores this zeroes every cell
+	public void clear() {
+		for (int i = 0; i < size; i += ZEROS.length) {
+			cells.put(i, ZEROS, 0, Math.min(ZEROS.length, size - i));
+		}
+	}
+
+	public int[] copy(int min, int max) {
+		int[] copy = DataStore.range(min, max, size);
+		cells.get(min, copy, 0, Math.min(max, size) - min);
+		return copy;
+	}
+
+	//A fork lives on the heap; only the machine that opened the file writes it
+	public DataStore fork() {
+		return new HeapDataStore(copy(0, size));
+	}
+
+	//The machine keeps its file, so source is copied into it
+	public DataStore restore(DataStore source) {
+		cells.put(0, source.copy(0, size));
+		return this;
+	}
+
+	//Whether the file already held data memory when it was opened
+	boolean isResumed() {
+		return resumed;
+	}
+	int getPC() {
+		return buffer.getInt(PC);
+	}
+	int getAccum() {
+		return buffer.getInt(ACCUM);
+	}
+
+	//Records pc and accum in the header and forces the file to disk
+	void sync(int pc, int accum) {
+		buffer.putInt(PC, pc);
+		buffer.putInt(ACCUM, accum);
+		buffer.force();
+	}
+
+	void check(int index) {
+		if (index < 0 || index >= size) throw DataStore.outOfBounds(index, size);
+	}
+}
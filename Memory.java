@@ -1,72 +1,388 @@
 package project;
 
+import java.nio.IntBuffer;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class Memory {
+	// sizes of the default machine; see MachineConfig
 	public static final int DATA_SIZE = 512;
 	public static final int CODE_SIZE = 256;
-	private int[] data = new int[DATA_SIZE];
-	private Instruction[] code = new Instruction[CODE_SIZE];
+	//Writes to data memory are tracked in pages of this many cells
+	public static final int DIRTY_PAGE_SIZE = 64;
+	private static final int DIRTY_PAGE_BITS = 6;
+	//Each instruction is packed into one long: the argument in the low 32
+	//bits, the opcode above it and a bit marking the cell as loaded, so an
+	//empty cell is 0. Instruction objects are only made when asked for.
+	private static final long LOADED = 1L << 40;
+	private DataStore data;
+	private long[] code;
+	private int[] ops;
+	private int[] fused;
+	// code, ops and fused are cleared together by starting a new generation
+	private GenerationStamps codeStamps;
+	// code, ops, fused and codeStamps are shared with a fork or snapshot and
+	// are copied before code is next changed
+	private boolean codeShared = false;
+	private long[] fusionCounts = new long[0];
 	private int changedDataIndex = -1;
+	// one bit per page written since resetDirtyPages; allDirty after a clear
+	private final long[] dirtyPages;
+	private boolean allDirty = true;
 	private int programSize = 0;
+	private boolean verified = false;
+	private int codeVersion = 0;
 	
-	int[] getData() {
+	//Where data memory is kept, chosen when the machine is made: an int[],
+	//a direct buffer off the Java heap, pages allocated on first write
+	//for large, sparsely used address spaces, a file mapped into memory
+	//that outlives the JVM (see MappedDataStore), or a mapped file shared
+	//with machines in other JVMs (see SharedDataStore)
+	public enum DataBackend {
+		HEAP, DIRECT, PAGED, MAPPED, SHARED
+	}
+	
+	Memory() {
+		this(MachineConfig.DEFAULT);
+	}
+	
+	Memory(MachineConfig config) {
+		int dataSize = config.getDataSize();
+		switch (config.getDataBackend()) {
+		case DIRECT: data = new DirectDataStore(dataSize); break;
+		case PAGED: data = new PagedDataStore(dataSize); break;
+		case MAPPED: data = new MappedDataStore(config.getDataFile(), dataSize); break;
+		case SHARED: data = new SharedDataStore(config.getDataFile(), dataSize); break;
+		default: data = new HeapDataStore(dataSize);
+		}
+		dirtyPages = new long[(getDirtyPageCount() + 63) >>> 6];
+		code = new long[config.getCodeSize()];
+		ops = new int[config.getCodeSize()];
+		fused = new int[config.getCodeSize()];
+		codeStamps = new GenerationStamps(config.getCodeSize());
+	}
+	
+	private Memory(Memory source, DataStore data) {
+		dirtyPages = new long[source.dirtyPages.length];
+		this.data = data;
+		shareCode(source);
+	}
+	
+	//A copy of this memory that shares what it can with it: code memory until
+	//either of them changes it, and data as the store allows (see DataStore.fork)
+	Memory fork() {
+		return new Memory(this, data.fork());
+	}
+	
+	//A copy of code memory alone, shared in the same way, which another thread
+	//can read while this memory is changed
+	Memory forkCode() {
+		return new Memory(this, new HeapDataStore(0));
+	}
+	
+	//Makes this memory a fork of source, which must be the same size. Compiled
+	//code stays valid unless code memory is different from source's.
+	void restore(Memory source) {
+		data = data.restore(source.data);
+		shareCode(source);
+	}
+	
+	//Makes code memory source's, shared until either of them changes it. The
+	//arrays may already be source's with stamps of their own after a clear.
+	void shareCode(Memory source) {
+		if (code != source.code || codeStamps != source.codeStamps) codeVersion++;
+		code = source.code;
+		ops = source.ops;
+		fused = source.fused;
+		codeStamps = source.codeStamps;
+		codeShared = true;
+		source.codeShared = true;
+		if (fusionCounts.length != source.fusionCounts.length) fusionCounts = new long[source.fusionCounts.length];
+		programSize = source.programSize;
+		verified = source.verified;
+		changedDataIndex = -1;
+		allDirty = true;
+	}
+	
+	//Treats code memory as shared with another memory, so it is copied
+	//before it is next changed and never written in place
+	void markCodeShared() {
+		codeShared = true;
+	}
+	
+	private void unshareCode() {
+		if (!codeShared) return;
+		code = code.clone();
+		ops = ops.clone();
+		fused = fused.clone();
+		codeStamps = codeStamps.copy();
+		codeShared = false;
+	}
+	
+	DataStore getDataStore() {
 		return data;
 	}
 	
+	//A copy of all of data memory
+	int[] getData() {
+		return data.copy(0, data.size());
+	}
+	
 	int getData(int index) {
-		return data[index];
+		return data.get(index);
 	}
 	
 	void setData(int index, int value) {
-		data[index] = value;
+		data.set(index, value);
+		dirtyPages[index >>> DIRTY_PAGE_BITS + 6] |= 1L << (index >>> DIRTY_PAGE_BITS);
 		changedDataIndex = index;
 	}
 	
+	//Sets the cells from start on to all of values in one bulk copy
+	void setData(int start, IntBuffer values) {
+		int length = values.remaining();
+		data.setAll(start, values);
+		changed(start, length);
+	}
+	
+	//Sets length cells from start on to value in one bulk fill
+	void fillData(int start, int length, int value) {
+		data.fill(start, length, value);
+		changed(start, length);
+	}
+	
+	//Marks the pages of a bulk write dirty
+	private void changed(int start, int length) {
+		if (length == 0) return;
+		for (int page = start >>> DIRTY_PAGE_BITS; page <= (start + length - 1) >>> DIRTY_PAGE_BITS; page++) {
+			dirtyPages[page >>> 6] |= 1L << page;
+		}
+		changedDataIndex = start + length - 1;
+	}
+	
 	int[] getData(int min, int max) {
-		return Arrays.copyOfRange(data, min, max);
+		return data.copy(min, max);
+	}
+	
+	int getDataSize() {
+		return data.size();
 	}
 	
+	//Clears data memory, unless it is SHARED with other machines, which go
+	//on using it (see clearSharedData)
 	void clearData() {
-		for (int i = 0; i < data.length; i++) {
-			data[i] = 0;
-		}
+		if (!data.isShared()) data.clear();
+		changedDataIndex = -1;
+		allDirty = true;
+	}
+	
+	//Clears data memory even if it is shared, for every machine using it
+	void clearSharedData() {
+		data.clear();
 		changedDataIndex = -1;
+		allDirty = true;
 	}
 	
+	//The last cell written, which the views highlight
 	int getChangedDataIndex() {
 		return changedDataIndex;
 	}
+	void setChangedDataIndex(int index) {
+		changedDataIndex = index;
+	}
+	
+	int getDirtyPageCount() {
+		return (data.size() + DIRTY_PAGE_SIZE - 1) >>> DIRTY_PAGE_BITS;
+	}
+	
+	//The first page at or after from with a cell written since the last
+	//resetDirtyPages, or -1 if there is none. Page p holds the cells from
+	//p*DIRTY_PAGE_SIZE, so the pages changed are visited with
+	//for (int p = nextDirtyPage(0); p >= 0; p = nextDirtyPage(p + 1))
+	int nextDirtyPage(int from) {
+		if (from >= getDirtyPageCount()) return -1;
+		if (allDirty) return from;
+		int word = from >>> 6;
+		long bits = dirtyPages[word] & (-1L << from);
+		while (bits == 0) {
+			if (++word == dirtyPages.length) return -1;
+			bits = dirtyPages[word];
+		}
+		return (word << 6) + Long.numberOfTrailingZeros(bits);
+	}
+	
+	//Takes a checkpoint: no page is dirty until data memory is next written
+	void resetDirtyPages() {
+		Arrays.fill(dirtyPages, 0);
+		allDirty = false;
+	}
 	
 	int getProgramSize() {
 		return programSize;
 	}
 	
 	Instruction[] getCode() {
-		return code;
+		return getCode(0, code.length);
 	}
 	
 	Instruction[] getCode(int min, int max) {
-		return Arrays.copyOfRange(code, min, max);
+		Instruction[] instrs = new Instruction[max - min];
+		for (int i = min; i < max; i++) {
+			instrs[i - min] = getCode(i);
+		}
+		return instrs;
 	}
 	
 	Instruction getCode(int index) {
-		return code[index];
+		long packed = packed(index);
+		if (packed == 0) return null;
+		return new Instruction((byte) (packed >>> 32), (int) packed);
+	}
+	
+	int getCodeSize() {
+		return code.length;
+	}
+	
+	boolean hasCode(int index) {
+		return packed(index) != 0;
+	}
+	
+	byte getOpcode(int index) {
+		return (byte) (packed(index) >>> 32);
+	}
+	
+	private long packed(int index) {
+		long packed = code[index];
+		return codeStamps.isCurrent(index) ? packed : 0;
 	}
 	
 	void setCode(int index, Instruction value) {
-		code[index] = value;
+		if (value == null) setCode(index, 0L);
+		else setCode(index, value.opcode, value.arg);
+	}
+	
+	void setCode(int index, byte opcode, int arg) {
+		setCode(index, LOADED | (opcode & 0xFFL) << 32 | (arg & 0xFFFFFFFFL));
+	}
+	
+	private void setCode(int index, long packed) {
+		unshareCode();
+		if (codeStamps.stamp(index)) {
+			int start = index & -GenerationStamps.BLOCK_SIZE;
+			int end = Math.min(start + GenerationStamps.BLOCK_SIZE, code.length);
+			Arrays.fill(code, start, end, 0L);
+			Arrays.fill(ops, start, end, Decoder.UNDECODED);
+			Arrays.fill(fused, start, end, 0);
+		}
+		code[index] = packed;
+		ops[index] = Decoder.UNDECODED;
+		for (int i = Math.max(0, index - 3); i <= index; i++) fused[i] = 0;
+		verified = false;
+		codeVersion++;
 		programSize = Math.max(programSize, index);
 	}
 	
-	void clearCode() {
-		for (Instruction x: code) {
-			x = null;
+	//Micro-op for the instruction at index, decoded on first use. Shared code
+	//is never written here, so memories on other threads can read it.
+	int getOp(int index) {
+		int op = ops[index];
+		if (op == Decoder.UNDECODED || !codeStamps.isCurrent(index)) {
+			if (packed(index) == 0) throw new NullPointerException("No instruction at " + index);
+			op = Decoder.decode(getOpcode(index));
+			if (!codeShared) ops[index] = op;
 		}
+		return op;
+	}
+	
+	int getOpArg(int index) {
+		return (int) packed(index);
+	}
+	
+	//Fused micro-op starting at index if there is one, otherwise the plain one
+	int getFusedOp(int index) {
+		int op = fused[index];
+		return op != 0 && codeStamps.isCurrent(index) ? op : getOp(index);
+	}
+	
+	void fusionFired(int op) {
+		fusionCounts[op - Decoder.FUSED]++;
+	}
+	
+	//Number of times each superinstruction has run since the program was decoded
+	Map<String, Long> getFusionReport() {
+		Map<String, Long> report = new TreeMap<>();
+		for (int i = 0; i < fusionCounts.length; i++) {
+			if (fusionCounts[i] > 0) report.put(Fusion.get(Decoder.FUSED + i).name, fusionCounts[i]);
+		}
+		return report;
+	}
+	
+	//Decodes the whole program at once, after the Loader has filled code
+	//memory, and marks where superinstructions start
+	void decodeCode() {
+		unshareCode();
+		for (int i = 0; i <= programSize && i < code.length; i++) {
+			if (hasCode(i)) getOp(i);
+		}
+		for (int i = 0; i <= programSize && i < code.length; i++) {
+			fused[i] = Fusion.match(this, i);
+		}
+		fusionCounts = new long[Fusion.count()];
+	}
+	
+	//Verifies and decodes the program; it stays verified until code is changed.
+	//Every block of the program is then current, any stale one being zeroed,
+	//so getVerifiedOp can read it without the generation checks.
+	void verifyCode() {
+		Verifier.verify(this);
+		decodeCode();
+		for (int i = 0; i <= programSize && i < code.length; i += GenerationStamps.BLOCK_SIZE) {
+			if (codeStamps.stamp(i)) {
+				int start = i & -GenerationStamps.BLOCK_SIZE;
+				int end = Math.min(start + GenerationStamps.BLOCK_SIZE, code.length);
+				Arrays.fill(code, start, end, 0L);
+				Arrays.fill(ops, start, end, Decoder.UNDECODED);
+				Arrays.fill(fused, start, end, 0);
+			}
+		}
+		verified = true;
+	}
+	
+	//Fused or plain micro-op at index of a verified program, which must be
+	//from 0 to getProgramSize(); UNDECODED if there is no instruction there
+	int getVerifiedOp(int index) {
+		int op = fused[index];
+		return op != 0 ? op : ops[index];
+	}
+	
+	//Argument at index of a verified program, as getVerifiedOp
+	int getVerifiedArg(int index) {
+		return (int) code[index];
+	}
+	
+	boolean isVerified() {
+		return verified;
+	}
+	
+	//Changes whenever code memory is written, so compiled code can tell it is stale
+	int getCodeVersion() {
+		return codeVersion;
+	}
+	
+	//Shared code is left to the memories it is shared with: new stamps make
+	//all of it stale here, and the next setCode copies it as usual
+	void clearCode() {
+		if (codeShared) codeStamps = new GenerationStamps(code.length);
+		else codeStamps.clear();
 		programSize = -1;
+		verified = false;
+		codeVersion++;
 	}
 	
 	void setProgramSize(int pSize) {
 		programSize = pSize;
+		verified = false;
+		codeVersion++;
 	}
 }
@@ -17,6 +17,7 @@ import javax.swing.border.Border;
 import javax.swing.border.TitledBorder;
 import project.Loader;
 import project.MachineModel;
+import project.Memory;
 
 public class MemoryViewPanel {
 	private MachineModel model;
@@ -73,13 +74,19 @@ public class MemoryViewPanel {
 	 }
 	 
 	 public void update(String arg) {
-		 for(int i = lower; i < upper; i++) {
-			 int val = model.getData(i);
-			 dataDecimal[i-lower].setText("" + val);
-			 String s = Integer.toHexString(val);
-			 if(val < 0)
-				 s = "-" + Integer.toHexString(-val);
-			 dataHex[i-lower].setText(s.toUpperCase());
+		 // only the pages written since the last update are repainted
+		 int page = model.nextDirtyPage(lower / Memory.DIRTY_PAGE_SIZE);
+		 for(; page >= 0 && page * Memory.DIRTY_PAGE_SIZE < upper; page = model.nextDirtyPage(page + 1)) {
+			 int start = Math.max(lower, page * Memory.DIRTY_PAGE_SIZE);
+			 int end = Math.min(upper, (page + 1) * Memory.DIRTY_PAGE_SIZE);
+			 for(int i = start; i < end; i++) {
+				 int val = model.getData(i);
+				 dataDecimal[i-lower].setText("" + val);
+				 String s = Integer.toHexString(val);
+				 if(val < 0)
+					 s = "-" + Integer.toHexString(-val);
+				 dataHex[i-lower].setText(s.toUpperCase());
+			 }
 		 }
 		 if(arg.equals("Clear")) {
 			 if(lower <= previousColor && previousColor < upper) {
@@ -0,0 +1,106 @@
+package project;
+
+import java.util.Arrays;
+
+//Data memory for large address spaces, in pages of PAGE_SIZE cells. Every
+//page starts as the one shared page of zeros and gets its own array the
+//first time a value other than 0 is written to it, so memory use grows with
+//the cells a program touches rather than with the size of data memory.
+//A fork shares the pages of its source, and whichever of them next writes
+//to a shared page copies it first. Each page is stamped with the generation
+//it was last written in, as GenerationStamps does for blocks, so clearing
+//only starts a new generation and a stale page reads as zeros until it is
+//next written.
+class PagedDataStore implements DataStore {
+	static final int PAGE_BITS = 10;
+	static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int[] ZERO_PAGE = new int[PAGE_SIZE];
+	private final int[][] pages;
+	private final boolean[] shared;
+	private final int[] stamps;
+	// stamps start at 0, so every page starts stale
+	private int generation = 1;
+	private final int size;
+
+	PagedDataStore(int size) {
+		this.size = size;
+		pages = new int[(size + PAGE_SIZE - 1) >>> PAGE_BITS][];
+		shared = new boolean[pages.length];
+		stamps = new int[pages.length];
+		Arrays.fill(pages, ZERO_PAGE);
+	}
+
+	private PagedDataStore(PagedDataStore source) {
+		size = source.size;
+		pages = source.pages.clone();
+		shared = new boolean[pages.length];
+		Arrays.fill(shared, true);
+		Arrays.fill(source.shared, true);
+		stamps = source.stamps.clone();
+		generation = source.generation;
+	}
+
+	public int get(int index) {
+		check(index);
+		int p = index >>> PAGE_BITS;
+		return stamps[p] == generation ? pages[p][index & (PAGE_SIZE - 1)] : 0;
+	}
+
+	public void set(int index, int value) {
+		check(index);
+		int p = index >>> PAGE_BITS;
+		int[] page = pages[p];
+		if (stamps[p] != generation) {
+			// stale: its cells are all 0 now
+			if (value == 0) return;
+			if (page == ZERO_PAGE || shared[p]) {
+				page = new int[PAGE_SIZE];
+				pages[p] = page;
+				shared[p] = false;
+			} else {
+				Arrays.fill(page, 0);
+			}
+			stamps[p] = generation;
+		} else if (page == ZERO_PAGE) {
+			if (value == 0) return;
+			page = new int[PAGE_SIZE];
+			pages[p] = page;
+			shared[p] = false;
+		} else if (shared[p]) {
+			page = page.clone();
+			pages[p] = page;
+			shared[p] = false;
+		}
+		page[index & (PAGE_SIZE - 1)] = value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		generation++;
+		if (generation == 0) { // wrapped round: start again from stale stamps
+			Arrays.fill(pages, ZERO_PAGE);
+			Arrays.fill(stamps, 0);
+			generation = 1;
+		}
+	}
+
+	public DataStore fork() {
+		return new PagedDataStore(this);
+	}
+
+	//Number of pages written since the last clear that have their own array
+	int allocatedPages() {
+		int count = 0;
+		for (int p = 0; p < pages.length; p++) {
+			if (pages[p] != ZERO_PAGE && stamps[p] == generation) count++;
+		}
+		return count;
+	}
+
+	private void check(int index) {
+		if (index < 0 || index >= size) throw DataStore.outOfBounds(index, size);
+	}
+}
@@ -0,0 +1,165 @@
+package project;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+//The sectioned .pexe format. Everything is big-endian:
+//
+//  0  magic      4  version (short), flags (short)
+//  8  number of instructions   12  bytes of code
+// 16  number of data runs      20  bytes of data
+// 24  CRC32C of the code and data sections
+// 28  code: each instruction as its opcode byte, then its int argument
+//     unless it takes none, as in the original format
+//     data: runs of consecutive cells, each its first address, then its
+//     number of cells times 2, plus 1 for a fill run, then the cells, or
+//     for a fill run the one value of all of them
+//
+//Version 1 had no fill runs and gave the number of cells as it is; Loader
+//still reads it.
+//
+//From version 2, a file with the COMPACT flag writes every int after the
+//header as a varint of 7 bits a byte, low bits first, the high bit set on
+//all but the last. Arguments and cells are zig-zag coded first, so small
+//negative numbers are short too, and each run gives its address as the
+//signed distance from the end of the run before it, so most addresses take
+//one byte. The data runs then have to be decoded rather than copied.
+//
+//The first byte of the magic is negative, so a file in the original format,
+//which starts with an opcode or with the -1 that ends an empty program, is
+//never taken for this one. Loader reads both.
+class PexeFormat {
+	static final int MAGIC = 0xFE504558;
+	static final short VERSION = 3;
+	static final short COMPACT = 1;
+	// the fewest equal cells written as a fill run
+	static final int MIN_FILL = 8;
+	static final int HEADER_SIZE = 28;
+	static final int CODE_COUNT = 8;
+	static final int CODE_BYTES = 12;
+	static final int RUN_COUNT = 16;
+	static final int DATA_BYTES = 20;
+	static final int CHECKSUM = 24;
+
+	static boolean isSectioned(ByteBuffer file) {
+		return file.limit() >= 4 && file.getInt(0) == MAGIC;
+	}
+
+	//CRC32C of everything after the header
+	static int checksum(ByteBuffer file) {
+		CRC32C crc = new CRC32C();
+		crc.update(file.slice(HEADER_SIZE, file.limit() - HEADER_SIZE));
+		return (int) crc.getValue();
+	}
+
+	//The program in this format, compact if asked. Data pairs are applied in
+	//order, so a later pair for an address wins, and are then grouped into
+	//runs of consecutive addresses, with a fill run for every stretch of at
+	//least MIN_FILL equal cells.
+	static ByteBuffer encode(List<Instruction> code, List<Assembler.DataPair> data, boolean compact) {
+		Map<Integer, Integer> cells = new TreeMap<>();
+		for (Assembler.DataPair pair : data) cells.put(pair.address, pair.value);
+		// room for the longest encoding, every cell a run of its own; the
+		// buffer is cut to what was written
+		ByteBuffer buff = ByteBuffer.allocate(HEADER_SIZE + 6*code.size() + 15*cells.size());
+		buff.position(HEADER_SIZE);
+		for (Instruction instr : code) {
+			buff.put(instr.opcode);
+			if (!Instruction.noArgument(instr)) putInt(buff, instr.arg, compact);
+		}
+		int codeBytes = buff.position() - HEADER_SIZE;
+		List<Integer> addresses = new ArrayList<>(cells.keySet());
+		int runs = 0;
+		int end = 0;
+		for (int i = 0; i < addresses.size(); ) {
+			int start = addresses.get(i);
+			int length = 1;
+			while (i + length < addresses.size() && addresses.get(i + length) == start + length) length++;
+			// split start to start + length - 1 into literal and fill runs
+			int literal = start;
+			for (int k = start; k < start + length; ) {
+				int value = cells.get(k);
+				int same = 1;
+				while (k + same < start + length && cells.get(k + same) == value) same++;
+				if (same >= MIN_FILL) {
+					if (literal < k) {
+						putRun(buff, literal, k - literal, false, end, compact);
+						for (int a = literal; a < k; a++) putInt(buff, cells.get(a), compact);
+						runs++;
+					}
+					putRun(buff, k, same, true, literal < k ? k : end, compact);
+					putInt(buff, value, compact);
+					runs++;
+					literal = k + same;
+					end = literal;
+				}
+				k += same;
+			}
+			if (literal < start + length) {
+				putRun(buff, literal, start + length - literal, false, end, compact);
+				for (int a = literal; a < start + length; a++) putInt(buff, cells.get(a), compact);
+				runs++;
+			}
+			i += length;
+			end = start + length;
+		}
+		buff.flip();
+		buff.putInt(0, MAGIC);
+		buff.putShort(4, VERSION);
+		buff.putShort(6, compact ? COMPACT : 0);
+		buff.putInt(CODE_COUNT, code.size());
+		buff.putInt(CODE_BYTES, codeBytes);
+		buff.putInt(RUN_COUNT, runs);
+		buff.putInt(DATA_BYTES, buff.limit() - HEADER_SIZE - codeBytes);
+		buff.putInt(CHECKSUM, checksum(buff));
+		return buff;
+	}
+
+	//The address and length of a run that follows a run ending at end
+	private static void putRun(ByteBuffer buff, int address, int length, boolean fill, int end, boolean compact) {
+		int lengthAndKind = length << 1 | (fill ? 1 : 0);
+		if (compact) {
+			putSigned(buff, address - end);
+			putUnsigned(buff, lengthAndKind);
+		} else {
+			buff.putInt(address).putInt(lengthAndKind);
+		}
+	}
+
+	private static void putInt(ByteBuffer buff, int value, boolean compact) {
+		if (compact) putSigned(buff, value);
+		else buff.putInt(value);
+	}
+
+	static void putUnsigned(ByteBuffer buff, int value) {
+		while ((value & ~0x7F) != 0) {
+			buff.put((byte) (value | 0x80));
+			value >>>= 7;
+		}
+		buff.put((byte) value);
+	}
+
+	static void putSigned(ByteBuffer buff, int value) {
+		putUnsigned(buff, value << 1 ^ value >> 31);
+	}
+
+	static int getUnsigned(ByteBuffer buff) {
+		int b = buff.get();
+		if (b >= 0) return b;
+		int value = b & 0x7F;
+		for (int shift = 7; b < 0; shift += 7) {
+			b = buff.get();
+			value |= (b & 0x7F) << shift;
+		}
+		return value;
+	}
+
+	static int getSigned(ByteBuffer buff) {
+		int value = getUnsigned(buff);
+		return value >>> 1 ^ -(value & 1);
+	}
+}
@@ -0,0 +1,145 @@
+package project;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+//Decoded programs, shared by every machine in the JVM, so loading a program
+//again is a bulk copy instead of reading, verifying and decoding the file.
+//An entry is the program's code memory, decoded and verified, and the cells
+//its data section writes, kept for one file (by path, size and time of last
+//change) and one size of machine. Entries are dropped least recently used
+//first once they hold more than the limit, which is the system property
+//pippin.programCacheBytes (64 MB by default) or set with setLimit.
+public class ProgramCache {
+	private static final Map<String, Image> IMAGES = new LinkedHashMap<>(16, 0.75f, true);
+	private static long limit = Long.getLong("pippin.programCacheBytes", 64L << 20);
+	private static long bytes;
+	private static long hits;
+	private static long misses;
+	private static long evictions;
+
+	private static class Image {
+		// holds only code, decoded and verified, which is shared with every
+		// machine that loads the image and so never written again
+		final Memory code;
+		final List<Integer> starts = new ArrayList<>();
+		final List<int[]> runs = new ArrayList<>();
+		// the cell a load highlights, as Loader leaves it
+		final int changedDataIndex;
+		long bytes;
+
+		Image(Memory code) {
+			this.code = code;
+			changedDataIndex = code.getChangedDataIndex();
+			bytes = 16L*code.getCodeSize();
+		}
+	}
+
+	//Clears the machine and loads program into it, as Loader.load does into
+	//a cleared machine, from the cache if it holds the program
+	public static String load(MachineModel model, File program) {
+		if (model == null || program == null) return null;
+		String key;
+		try {
+			key = program.getCanonicalPath() + "|" + program.length() + "|" + program.lastModified()
+					+ "|" + model.getCodeSize() + "|" + model.getDataSize();
+		} catch (IOException e) {
+			return Loader.load(model, program);
+		}
+		Image image;
+		synchronized (ProgramCache.class) {
+			image = IMAGES.get(key);
+			if (image != null) hits++;
+			else misses++;
+		}
+		if (image == null) {
+			MachineModel scratch = new MachineModel(() -> {},
+					new MachineConfig(model.getDataSize(), model.getCodeSize()).withDataBackend(Memory.DataBackend.PAGED));
+			scratch.resetDirtyPages();
+			String result = Loader.load(scratch, program);
+			if (!"success".equals(result)) return result;
+			image = image(scratch);
+			add(key, image);
+		}
+		Memory memory = model.getMemory();
+		memory.clearData();
+		// sharing also marks the image's code shared, so it is done under the lock
+		synchronized (ProgramCache.class) {
+			memory.shareCode(image.code);
+		}
+		for (int i = 0; i < image.runs.size(); i++) {
+			memory.setData(image.starts.get(i), IntBuffer.wrap(image.runs.get(i)));
+		}
+		memory.setChangedDataIndex(image.changedDataIndex);
+		model.setAccum(0);
+		model.setPC(0);
+		return "success";
+	}
+
+	//The code of scratch and the runs of dirty pages of its data
+	private static Image image(MachineModel scratch) {
+		Image image = new Image(scratch.getMemory());
+		int size = scratch.getDataSize();
+		int page = scratch.nextDirtyPage(0);
+		while (page >= 0) {
+			int last = page;
+			while (scratch.nextDirtyPage(last + 1) == last + 1) last++;
+			int start = page * Memory.DIRTY_PAGE_SIZE;
+			int[] run = scratch.getData(start, Math.min(size, (last + 1) * Memory.DIRTY_PAGE_SIZE));
+			image.starts.add(start);
+			image.runs.add(run);
+			image.bytes += 4L*run.length;
+			page = scratch.nextDirtyPage(last + 1);
+		}
+		image.code.clearData();
+		return image;
+	}
+
+	//Publishes image, whose code is first marked shared so that nothing
+	//writes it again
+	private static synchronized void add(String key, Image image) {
+		image.code.markCodeShared();
+		Image old = IMAGES.put(key, image);
+		if (old != null) bytes -= old.bytes;
+		bytes += image.bytes;
+		evict();
+	}
+
+	private static void evict() {
+		Iterator<Image> eldest = IMAGES.values().iterator();
+		while (bytes > limit && eldest.hasNext()) {
+			bytes -= eldest.next().bytes;
+			eldest.remove();
+			evictions++;
+		}
+	}
+
+	//The most memory the cache may hold, in bytes
+	public static synchronized void setLimit(long limitBytes) {
+		limit = limitBytes;
+		evict();
+	}
+
+	public static synchronized void clear() {
+		IMAGES.clear();
+		bytes = 0;
+	}
+
+	//Hits, misses, evictions, entries and bytes held
+	public static synchronized Map<String, Long> getMetrics() {
+		Map<String, Long> metrics = new TreeMap<>();
+		metrics.put("hits", hits);
+		metrics.put("misses", misses);
+		metrics.put("evictions", evictions);
+		metrics.put("entries", (long) IMAGES.size());
+		metrics.put("bytes", bytes);
+		return metrics;
+	}
+}
@@ -0,0 +1,50 @@
+package project;
+
+//What a call to MachineModel.run or runUntil did: why it stopped, the pc it
+//stopped at (the faulting instruction after a fault, which has not run) and
+//how many instructions completed
+public class RunResult {
+	public enum StopReason {
+		HALTED, BUDGET_EXHAUSTED, CONDITION_MET,
+		DIVIDE_BY_ZERO, ILLEGAL_INSTRUCTION, PARITY, CODE_ACCESS, DATA_OUT_OF_RANGE
+	}
+
+	private final StopReason reason;
+	private final int pc;
+	private final long steps;
+	private final RuntimeException fault;
+
+	RunResult(StopReason reason, int pc, long steps, RuntimeException fault) {
+		this.reason = reason;
+		this.pc = pc;
+		this.steps = steps;
+		this.fault = fault;
+	}
+
+	public StopReason getReason() {
+		return reason;
+	}
+	public int getPC() {
+		return pc;
+	}
+	public long getSteps() {
+		return steps;
+	}
+	//The exception behind a fault, or null if the program did not fault
+	public RuntimeException getFault() {
+		return fault;
+	}
+	public boolean isFault() {
+		return fault != null;
+	}
+	//For callers that want faults as exceptions, as step() and execute() give them
+	public RunResult throwIfFault() {
+		if (fault != null) throw fault;
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return reason + " at " + pc + " after " + steps + " steps";
+	}
+}
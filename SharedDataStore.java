@@ -0,0 +1,46 @@
+package project;
+
+import java.io.File;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+//Data memory in a file that several machines map at once, each possibly in
+//its own JVM on the same host, so they can exchange data through it. The
+//file has the layout of MappedDataStore, and the first machine to open it
+//writes the header under a file lock. The pc and accum in the header are
+//not used, since each machine has its own.
+//
+//A mapped file is the same physical memory in every process, so a write is
+//seen by the others without any sync. Cells are written with release and
+//read with acquire semantics: a machine that reads a value another wrote
+//also sees every cell that machine wrote before it, so a flag cell can
+//publish the data written ahead of it. That covers the bulk copies of
+//MappedDataStore too, which need no fences of their own. Nothing makes a
+//read-modify-write, such as LOD, ADD then STO, atomic across machines.
+//Clearing or reloading one machine leaves the cells alone; only
+//MachineModel.clearSharedData zeroes them, for every machine.
+class SharedDataStore extends MappedDataStore {
+	private static final VarHandle CELL = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+	SharedDataStore(File file, int size) {
+		super(file, size);
+	}
+
+	@Override
+	public int get(int index) {
+		check(index);
+		return (int) CELL.getAcquire(buffer, HEADER_SIZE + 4*index);
+	}
+
+	@Override
+	public void set(int index, int value) {
+		check(index);
+		CELL.setRelease(buffer, HEADER_SIZE + 4*index, value);
+	}
+
+	@Override
+	public boolean isShared() {
+		return true;
+	}
+}
@@ -16,11 +16,19 @@ import java.util.stream.Stream;
 
 public class SimpleAssembler implements Assembler {
 	private boolean readingCode = true;
-	private int noArgCount = 0;
+	private final boolean compact;
+	
+	public SimpleAssembler() {
+		this(false);
+	}
+	
+	//With compact, the pexe uses varints for arguments and data (see PexeFormat)
+	public SimpleAssembler(boolean compact) {
+		this.compact = compact;
+	}
 	
 	Instruction makeCode(String[] parts) {
 		if (noArgument.contains(parts[0])) {
-			noArgCount++;
 			int opPart = 8*Instruction.OPCODES.get(parts[0]);
 			opPart += Instruction.numOnes(opPart)%2;
 			return new Instruction((byte)opPart, 0);
@@ -80,22 +88,7 @@ public class SimpleAssembler implements Assembler {
 			.map(this::makeData)
 			.collect(Collectors.toList());
 		
-		int bytesNeeded = noArgCount + 5*(outputCode.size()-noArgCount)+1+8*(outputData.size());
-		ByteBuffer buff = ByteBuffer.allocate(bytesNeeded); 
-		outputCode.stream()
-		.forEach(instr -> {
-			buff.put(instr.opcode);
-			if(!Instruction.noArgument(instr)) {
-					buff.putInt(instr.arg);
-			}
-		});
-		buff.put((byte)-1);
-		outputData.stream()
-		.forEach(pair -> {
-			buff.putInt(pair.address);
-			buff.putInt(pair.value);
-		});
-		buff.rewind();
+		ByteBuffer buff = PexeFormat.encode(outputCode, outputData, compact);
 		
 		//Write ByteBuffer to file
 		boolean append = false;
@@ -118,7 +111,8 @@ public class SimpleAssembler implements Assembler {
 		System.out.println("Enter the name of the file without extension: ");
 		try (Scanner keyboard = new Scanner(System.in)) { 
 			String filename = keyboard.nextLine();
-			int i = new SimpleAssembler().assemble(filename + ".pasm", 
+			// -Dpippin.compactPexe=true writes the compact encoding
+			int i = new SimpleAssembler(Boolean.getBoolean("pippin.compactPexe")).assemble(filename + ".pasm", 
 					filename + ".pexe", error);
 			System.out.println("result = " + i);
 		}
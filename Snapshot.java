@@ -0,0 +1,26 @@
+package project;
+
+//The state of a machine at one moment, taken by MachineModel.snapshot: its
+//code and data memory, accum and pc. A snapshot never changes, and
+//MachineModel.restore puts a machine back in its state as often as needed,
+//which is much cheaper than loading the program again.
+public class Snapshot {
+	final MachineConfig config;
+	final Memory memory;
+	final int accum;
+	final int pc;
+
+	Snapshot(MachineConfig config, Memory memory, int accum, int pc) {
+		this.config = config;
+		this.memory = memory;
+		this.accum = accum;
+		this.pc = pc;
+	}
+
+	public int getAccum() {
+		return accum;
+	}
+	public int getPC() {
+		return pc;
+	}
+}
@@ -0,0 +1,164 @@
+package project;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+//Starts every program in the interpreter and counts how often each basic
+//block is entered, which for Pippin code is mostly the targets of JUMP and
+//JMPZ. A block entered blockThreshold times is compiled to closures (see
+//ClosureEngine). Once any block has been entered programThreshold times the
+//whole program is compiled by BytecodeCompiler on a background thread, and
+//it takes over at the first block boundary after it is ready, when accum and
+//pc are in the CPU. The compiler reads a copy of code memory (see
+//Memory.forkCode), and all of this is dropped when code memory changes. The
+//thresholds can be set with the system properties pippin.tier.blockThreshold
+//and pippin.tier.programThreshold.
+class TieredEngine implements ExecutionEngine {
+	private static final ExecutorService COMPILER = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "Pippin compiler");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final MachineModel model;
+	private final BytecodeEngine bytecode;
+	private final ClosureEngine.Registers regs = new ClosureEngine.Registers();
+	private final int blockThreshold = Integer.getInteger("pippin.tier.blockThreshold", 50);
+	private final int programThreshold = Integer.getInteger("pippin.tier.programThreshold", 2000);
+	private int version = -1;
+	private int[] entries;
+	private int[] lengths;
+	private ClosureEngine.Block[] blocks;
+	private boolean submitted;
+	private Future<MethodHandle> pending;
+	private int pendingVersion;
+	private long promotedBlocks;
+	private long interpretedSteps;
+	private long closureSteps;
+	private long compiledSteps;
+
+	TieredEngine(MachineModel model) {
+		this.model = model;
+		bytecode = new BytecodeEngine(model);
+	}
+
+	public long execute(long maxSteps) {
+		Memory memory = model.getMemory();
+		if (version != memory.getCodeVersion()) reset(memory);
+		long steps = 0;
+		try {
+			while (steps < maxSteps) {
+				if (pending != null && pending.isDone()) install();
+				if (bytecode.isCompiled()) {
+					long n = bytecode.execute(maxSteps - steps);
+					compiledSteps += n;
+					return steps + n;
+				}
+				int pc = model.getPC();
+				boolean inCode = pc >= 0 && pc < blocks.length;
+				ClosureEngine.Block block = inCode ? enter(memory, pc) : null;
+				if (block != null && block.length <= maxSteps - steps) {
+					regs.accum = model.getAccum();
+					regs.pc = pc;
+					regs.halted = false;
+					try {
+						block.entry.run(regs);
+					} catch (RuntimeException e) {
+						model.setAccum(regs.accum);
+						model.setPC(regs.pc);
+						model.fault(regs.pc - pc);
+						model.halt();
+						throw e;
+					}
+					model.setAccum(regs.accum);
+					model.setPC(regs.pc);
+					steps += block.length;
+					closureSteps += block.length;
+					if (regs.halted) {
+						model.halt();
+						return steps;
+					}
+				} else {
+					int length = inCode ? Math.max(1, length(memory, pc)) : 1;
+					long n = model.interpret(Math.min(length, maxSteps - steps));
+					steps += n;
+					interpretedSteps += n;
+					if (model.isHalted()) return steps;
+				}
+			}
+		} catch (RuntimeException e) {
+			model.fault(steps);
+			throw e;
+		}
+		return steps;
+	}
+
+	//Counts an entry to the block at pc and returns its closures once it is hot
+	private ClosureEngine.Block enter(Memory memory, int pc) {
+		if (entries[pc] < programThreshold) entries[pc]++;
+		if (entries[pc] >= programThreshold && !submitted) submit(memory);
+		ClosureEngine.Block block = blocks[pc];
+		if (block == null && entries[pc] >= blockThreshold) {
+			block = ClosureEngine.compile(memory, pc);
+			if (block.length == 0) return null;
+			blocks[pc] = block;
+			promotedBlocks++;
+		}
+		return block;
+	}
+
+	private int length(Memory memory, int pc) {
+		if (lengths[pc] < 0) lengths[pc] = ClosureEngine.blockLength(memory, pc);
+		return lengths[pc];
+	}
+
+	private void submit(Memory memory) {
+		submitted = true;
+		pendingVersion = memory.getCodeVersion();
+		Memory code = memory.forkCode();
+		pending = COMPILER.submit(() -> BytecodeCompiler.compile(code));
+	}
+
+	private void install() {
+		MethodHandle program = null;
+		try {
+			program = pending.get();
+		} catch (InterruptedException | ExecutionException e) {
+			// the program stays on closures
+		}
+		if (program != null && pendingVersion == model.getMemory().getCodeVersion()) {
+			bytecode.install(program, pendingVersion);
+		}
+		pending = null;
+	}
+
+	private void reset(Memory memory) {
+		version = memory.getCodeVersion();
+		int size = memory.getCodeSize();
+		entries = new int[size];
+		lengths = new int[size];
+		Arrays.fill(lengths, -1);
+		blocks = new ClosureEngine.Block[size];
+		if (pending != null) pending.cancel(false);
+		pending = null;
+		submitted = false;
+		promotedBlocks = 0;
+	}
+
+	public Map<String, Long> getMetrics() {
+		Map<String, Long> metrics = new TreeMap<>();
+		metrics.put("blockThreshold", (long) blockThreshold);
+		metrics.put("programThreshold", (long) programThreshold);
+		metrics.put("promotedBlocks", promotedBlocks);
+		metrics.put("programCompiled", bytecode.isCompiled() ? 1L : 0L);
+		metrics.put("interpretedSteps", interpretedSteps);
+		metrics.put("closureSteps", closureSteps);
+		metrics.put("compiledSteps", compiledSteps);
+		return metrics;
+	}
+}
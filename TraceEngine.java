@@ -0,0 +1,255 @@
+package project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+//Records and compiles hot loops as traces. The program is interpreted one
+//basic block at a time and every backward JUMP or JMPZ counts an entry to its
+//target. When a target has been reached traceThreshold times the next pass
+//through the loop is recorded instruction by instruction until it returns to
+//the target, and the recorded path is compiled into one straight chain of
+//closures (see ClosureEngine). Unconditional jumps on the path disappear and
+//each JMPZ becomes a guard that leaves the trace if it goes the other way
+//this time. Recording gives up on HALT, indirect jumps, instructions that
+//cannot be compiled and paths longer than MAX_TRACE. A trace whose guards
+//fail on more than half of its runs is dropped so the loop can be recorded
+//again. The threshold can be set with the system property
+//pippin.trace.threshold.
+class TraceEngine implements ExecutionEngine {
+	static final int MAX_TRACE = 512;
+	private static final int UNSTABLE_RUNS = 32;
+	private final MachineModel model;
+	private final ClosureEngine.Registers regs = new ClosureEngine.Registers();
+	private final int traceThreshold = Integer.getInteger("pippin.trace.threshold", 20);
+	private int version = -1;
+	private int[] loopCounts;
+	private int[] lengths;
+	private Trace[] traces;
+	private long tracesCompiled;
+	private long recordingsAborted;
+	private long tracesDropped;
+	private long traceRuns;
+	private long guardFailures;
+
+	private static class Trace {
+		final int header;
+		final int length;
+		final ClosureEngine.Op entry;
+		// pc of each instruction on the path
+		final int[] pcs;
+		long runs;
+		long guardFailures;
+
+		Trace(int header, int[] pcs, ClosureEngine.Op entry) {
+			this.header = header;
+			this.length = pcs.length;
+			this.pcs = pcs;
+			this.entry = entry;
+		}
+
+		//Instructions completed in the current pass before the one at pc,
+		//which is after the last guard passed: any pc that comes twice on the
+		//path has a JMPZ in between
+		int position(int lastGuard, int pc) {
+			int k = lastGuard;
+			while (k < length && pcs[k] != pc) k++;
+			return k;
+		}
+	}
+
+	TraceEngine(MachineModel model) {
+		this.model = model;
+	}
+
+	public long execute(long maxSteps) {
+		Memory memory = model.getMemory();
+		if (version != memory.getCodeVersion()) reset(memory);
+		long steps = 0;
+		try {
+			while (steps < maxSteps) {
+				int pc = model.getPC();
+				boolean inCode = pc >= 0 && pc < traces.length;
+				Trace trace = inCode ? traces[pc] : null;
+				if (trace != null && trace.length <= maxSteps - steps) {
+					steps += run(trace, maxSteps - steps);
+					continue;
+				}
+				int length = inCode ? Math.max(1, length(memory, pc)) : 1;
+				long n = model.interpret(Math.min(length, maxSteps - steps));
+				steps += n;
+				if (model.isHalted()) return steps;
+				int last = pc + (int) n - 1;
+				int target = model.getPC();
+				if (n == length && inCode && target <= last && target >= 0 && target < traces.length
+						&& isJump(memory.getOp(last)) && traces[target] == null
+						&& ++loopCounts[target] >= traceThreshold && steps < maxSteps) {
+					loopCounts[target] = 0;
+					steps += record(memory, target, maxSteps - steps);
+					if (model.isHalted()) return steps;
+				}
+			}
+		} catch (RuntimeException e) {
+			model.fault(steps);
+			throw e;
+		}
+		return steps;
+	}
+
+	//Runs a trace for as long as it keeps coming back to its header and the
+	//budget allows, and returns the number of instructions executed. A guard
+	//that fails on the last instruction has done the whole path, but has left
+	//the loop, so it is told apart by sideExit rather than by exit.
+	private long run(Trace trace, long maxSteps) {
+		long steps = 0;
+		regs.accum = model.getAccum();
+		regs.pc = trace.header;
+		try {
+			do {
+				regs.exit = 0;
+				regs.sideExit = false;
+				trace.entry.run(regs);
+				trace.runs++;
+				traceRuns++;
+				steps += regs.exit;
+			} while (!regs.sideExit && regs.pc == trace.header && maxSteps - steps >= trace.length);
+		} catch (RuntimeException e) {
+			model.setAccum(regs.accum);
+			model.setPC(regs.pc);
+			model.fault(steps + trace.position(regs.exit, regs.pc));
+			model.halt();
+			throw e;
+		}
+		model.setAccum(regs.accum);
+		model.setPC(regs.pc);
+		if (regs.sideExit) {
+			trace.guardFailures++;
+			guardFailures++;
+			if (trace.runs >= UNSTABLE_RUNS && 2*trace.guardFailures > trace.runs) {
+				traces[trace.header] = null;
+				tracesDropped++;
+			}
+		}
+		return steps;
+	}
+
+	//Interprets one pass around the loop at header, remembering the path it
+	//takes, and compiles it if the pass comes back to header
+	private long record(Memory memory, int header, long maxSteps) {
+		List<int[]> path = new ArrayList<>(); // {pc, micro-op, arg, jump taken}
+		long steps = 0;
+		while (steps < maxSteps && path.size() < MAX_TRACE) {
+			int pc = model.getPC();
+			int op = memory.getOp(pc);
+			if (op == Decoder.HALT || op == Decoder.BAD_PARITY || op == Decoder.BAD_FLAGS || op == Decoder.OTHER
+					|| isIndirectJump(op)) {
+				break;
+			}
+			try {
+				steps += model.interpret(1);
+			} catch (RuntimeException e) {
+				model.fault(steps);
+				throw e;
+			}
+			int next = model.getPC();
+			path.add(new int[] {pc, op, memory.getOpArg(pc), next == pc + 1 ? 0 : 1});
+			if (next == header) {
+				traces[header] = compile(memory, header, path);
+				tracesCompiled++;
+				return steps;
+			}
+			if (next < 0 || next >= traces.length) break;
+		}
+		recordingsAborted++;
+		return steps;
+	}
+
+	private static Trace compile(Memory memory, int header, List<int[]> path) {
+		int length = path.size();
+		int[] pcs = new int[length];
+		for (int k = 0; k < length; k++) pcs[k] = path.get(k)[0];
+		ClosureEngine.Op chain = r -> {
+			r.pc = header;
+			r.exit = length;
+		};
+		for (int k = length - 1; k >= 0; k--) {
+			int[] step = path.get(k);
+			int pc = step[0];
+			int op = step[1];
+			int arg = step[2];
+			if (op == Decoder.JUMP_RELATIVE || op == Decoder.JUMP_ABSOLUTE) continue;
+			if (op == Decoder.JMPZ_RELATIVE || op == Decoder.JMPZ_ABSOLUTE) {
+				chain = guard(pc, step[3] == 1, op == Decoder.JMPZ_RELATIVE ? pc + arg : arg, k + 1, chain);
+			} else {
+				chain = ClosureEngine.closure(memory, op, arg, pc, chain);
+			}
+		}
+		return new Trace(header, pcs, chain);
+	}
+
+	//A JMPZ on the trace: carries on if it goes the recorded way, otherwise
+	//leaves the trace at the pc it really goes to and sets sideExit. Either
+	//way exit is set to the instructions done so far, for Trace.position.
+	private static ClosureEngine.Op guard(int pc, boolean taken, int target, int done, ClosureEngine.Op next) {
+		int exitPC = taken ? pc + 1 : target;
+		if (taken) return r -> {
+			if (r.accum == 0) {
+				r.exit = done;
+				next.run(r);
+			} else {
+				r.pc = exitPC;
+				r.exit = done;
+				r.sideExit = true;
+			}
+		};
+		return r -> {
+			if (r.accum != 0) {
+				r.exit = done;
+				next.run(r);
+			} else {
+				r.pc = exitPC;
+				r.exit = done;
+				r.sideExit = true;
+			}
+		};
+	}
+
+	private static boolean isJump(int op) {
+		return op >= Decoder.JUMP_RELATIVE && op <= Decoder.JMPZ_INDIRECT_ABSOLUTE;
+	}
+
+	private static boolean isIndirectJump(int op) {
+		return op == Decoder.JUMP_INDIRECT_RELATIVE || op == Decoder.JUMP_INDIRECT_ABSOLUTE
+				|| op == Decoder.JMPZ_INDIRECT_RELATIVE || op == Decoder.JMPZ_INDIRECT_ABSOLUTE;
+	}
+
+	private int length(Memory memory, int pc) {
+		if (lengths[pc] < 0) lengths[pc] = ClosureEngine.blockLength(memory, pc);
+		return lengths[pc];
+	}
+
+	private void reset(Memory memory) {
+		version = memory.getCodeVersion();
+		int size = memory.getCodeSize();
+		loopCounts = new int[size];
+		lengths = new int[size];
+		Arrays.fill(lengths, -1);
+		traces = new Trace[size];
+	}
+
+	public Map<String, Long> getMetrics() {
+		Map<String, Long> metrics = new TreeMap<>();
+		metrics.put("traceThreshold", (long) traceThreshold);
+		metrics.put("tracesCompiled", tracesCompiled);
+		metrics.put("recordingsAborted", recordingsAborted);
+		metrics.put("tracesDropped", tracesDropped);
+		metrics.put("traceRuns", traceRuns);
+		metrics.put("guardFailures", guardFailures);
+		for (Trace trace : traces) {
+			if (trace != null) metrics.put("guardFailures@" + trace.header, trace.guardFailures);
+		}
+		return metrics;
+	}
+}
@@ -0,0 +1,32 @@
+package project;
+
+//Checks a program once when it is loaded: parity, legal flags for each
+//mnemonic and jump targets that are known statically. A program that passes
+//can be run without meeting any of these faults in its own code.
+class Verifier {
+	static void verify(Memory memory) {
+		int size = memory.getProgramSize();
+		for (int i = 0; i <= size; i++) {
+			if (!memory.hasCode(i)) continue;
+			int op = memory.getOp(i);
+			if (op == Decoder.BAD_PARITY) {
+				throw new ParityCheckException("The instruction at " + i + " is corrupted.");
+			}
+			if (op == Decoder.BAD_FLAGS) {
+				int flags = memory.getOpcode(i) & 6;
+				String fString = "(" + (flags%8 > 3?"1":"0") + (flags%4 > 1?"1":"0") + ")";
+				throw new IllegalInstructionException("Illegal flags for the instruction at " + i + ": " + fString);
+			}
+			if (op == Decoder.OTHER) {
+				throw new IllegalInstructionException("Illegal opcode for the instruction at " + i);
+			}
+			int target = -1;
+			if (op == Decoder.JUMP_RELATIVE || op == Decoder.JMPZ_RELATIVE) target = i + memory.getOpArg(i);
+			else if (op == Decoder.JUMP_ABSOLUTE || op == Decoder.JMPZ_ABSOLUTE) target = memory.getOpArg(i);
+			else continue;
+			if (target < 0 || target > size) {
+				throw new CodeAccessException("The jump at " + i + " leaves the program: " + target);
+			}
+		}
+	}
+}
@@ -1,11 +1,7 @@
 package projectview;
 
-import project.CodeAccessException;
-import project.DivideByZeroException;
-import project.IllegalInstructionException;
 import project.MachineModel;
-import project.Memory;
-import project.ParityCheckException;
+import project.RunResult;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
@@ -30,46 +26,60 @@ public class ViewMediator {
 	public void step(){
 		if (currentState != States.PROGRAM_HALTED &&
 				currentState != States.NOTHING_LOADED) {
-			try {
-				model.step();
-			} catch (CodeAccessException e) {
-				JOptionPane.showMessageDialog(frame, "Illegal access to code from line " + model.getPC() + "\n" + "Exception message: " + e.getMessage(),
-						"Run time error", JOptionPane.OK_OPTION);
-				System.out.println("Illegal access to code from line " + model.getPC()); // just for debugging
-				System.out.println("Exception message: " + e.getMessage());
-			} catch(ArrayIndexOutOfBoundsException e) {
-				JOptionPane.showMessageDialog(frame, "Index exceeds array's bounds " + model.getPC() + "\n" + "Exception message: " + e.getMessage(),
-						"Run time error", JOptionPane.OK_OPTION);
-				System.out.println("Illegal access to code from line " + model.getPC()); // just for debugging
-				System.out.println("Exception message: " + e.getMessage());
-				// YOU HAVE TO FILL OUT ALL THESE CATCH BLOCKSthey all have different JOptionPane
-				// code with different messages appropriate to the exception
-			} catch(NullPointerException e) {
-				System.out.println("Illegal access to code from line " + model.getPC()); // just for debugging
-				System.out.println("Exception message: " + e.getMessage());
-			} catch(ParityCheckException e) {
-				JOptionPane.showMessageDialog(frame, "Illegal Format: Integer must have even amount of 1's " + model.getPC() + "\n" + "Exception message: " + e.getMessage(),
-						"Run time error", JOptionPane.OK_OPTION);
-				System.out.println("Illegal access to code from line " + model.getPC()); // just for debugging
-				System.out.println("Exception message: " + e.getMessage());
-			} catch(IllegalInstructionException e) {
-				JOptionPane.showMessageDialog(frame, "Illegal format for instruction " + model.getPC() + "\n" + "Exception message: " + e.getMessage(),
-						"Run time error", JOptionPane.OK_OPTION);
-				System.out.println("Illegal access to code from line " + model.getPC()); // just for debugging
-				System.out.println("Exception message: " + e.getMessage());
-			} catch(IllegalArgumentException e) {
-				JOptionPane.showMessageDialog(frame, "Illegal argument has been passed " + model.getPC() + "\n" + "Exception message: " + e.getMessage(),
-						"Run time error", JOptionPane.OK_OPTION);
-				System.out.println("Illegal access to code from line " + model.getPC()); // just for debugging
-				System.out.println("Exception message: " + e.getMessage());
-			} catch(DivideByZeroException e) {
-				JOptionPane.showMessageDialog(frame, "Cannot divide by zero " + model.getPC() + "\n" + "Exception message: " + e.getMessage(),
-						"Run time error", JOptionPane.OK_OPTION);
+			run(1);
+			notify("");
+		}
+	}
+	
+	//Runs the program like model.run and shows any run time error that stops
+	//it. Returns false if it was stopped by something other than a fault of
+	//the program, which model.run throws on.
+	private boolean run(long maxSteps) {
+		try {
+			report(model.run(maxSteps));
+			return true;
+		} catch(IllegalArgumentException e) {
+			JOptionPane.showMessageDialog(frame, "Illegal argument has been passed " + model.getPC() + "\n" + "Exception message: " + e.getMessage(),
+					"Run time error", JOptionPane.OK_OPTION);
+			System.out.println("Illegal access to code from line " + model.getPC()); // just for debugging
+			System.out.println("Exception message: " + e.getMessage());
+			return false;
+		}
+	}
+	
+	//Shows the run time error, if any, that stopped the program
+	private void report(RunResult result) {
+		RuntimeException e = result.getFault();
+		String title = null;
+		switch (result.getReason()) {
+		case CODE_ACCESS:
+			if (e instanceof NullPointerException) {
 				System.out.println("Illegal access to code from line " + model.getPC()); // just for debugging
 				System.out.println("Exception message: " + e.getMessage());
+				return;
 			}
-			notify("");
+			if (e instanceof ArrayIndexOutOfBoundsException) title = "Index exceeds array's bounds ";
+			else title = "Illegal access to code from line ";
+			break;
+		case DATA_OUT_OF_RANGE:
+			title = "Index exceeds array's bounds ";
+			break;
+		case PARITY:
+			title = "Illegal Format: Integer must have even amount of 1's ";
+			break;
+		case ILLEGAL_INSTRUCTION:
+			title = "Illegal format for instruction ";
+			break;
+		case DIVIDE_BY_ZERO:
+			title = "Cannot divide by zero ";
+			break;
+		default:
+			return;
 		}
+		JOptionPane.showMessageDialog(frame, title + model.getPC() + "\n" + "Exception message: " + e.getMessage(),
+				"Run time error", JOptionPane.OK_OPTION);
+		System.out.println("Illegal access to code from line " + model.getPC()); // just for debugging
+		System.out.println("Exception message: " + e.getMessage());
 	}
 	
 	public MachineModel getModel() {
@@ -89,9 +99,12 @@ public class ViewMediator {
 		filesMgr = new FilesMgr(this);
 		filesMgr.initialize();
 		codeViewPanel = new CodeViewPanel(model);
-		memoryViewPanel1 = new MemoryViewPanel(model, 0, 160);
-		memoryViewPanel2 = new MemoryViewPanel(model, 160, Memory.DATA_SIZE/2);
-		memoryViewPanel3 = new MemoryViewPanel(model, Memory.DATA_SIZE/2, Memory.DATA_SIZE);
+		int dataSize = model.getDataSize();
+		int first = Math.min(160, dataSize);
+		int half = Math.max(first, dataSize/2);
+		memoryViewPanel1 = new MemoryViewPanel(model, 0, first);
+		memoryViewPanel2 = new MemoryViewPanel(model, first, half);
+		memoryViewPanel3 = new MemoryViewPanel(model, half, dataSize);
 		controlPanel = new ControlPanel(this);
 		processorPanel = new ProcessorViewPanel(model);
 		menuBuilder = new MenuBarBuilder(this);
@@ -168,44 +181,7 @@ public class ViewMediator {
 	public void execute() {
 		while (currentState != States.PROGRAM_HALTED &&
 				currentState != States.NOTHING_LOADED) {
-			try {
-				model.step();
-			} catch (CodeAccessException e) {
-				JOptionPane.showMessageDialog(frame, "Illegal access to code from line " + model.getPC() + "\n" + "Exception message: " + e.getMessage(),
-						"Run time error", JOptionPane.OK_OPTION);
-				System.out.println("Illegal access to code from line " + model.getPC()); // just for debugging
-				System.out.println("Exception message: " + e.getMessage());
-			} catch(ArrayIndexOutOfBoundsException e) {
-				JOptionPane.showMessageDialog(frame, "Index exceeds array's bounds " + model.getPC() + "\n" + "Exception message: " + e.getMessage(),
-						"Run time error", JOptionPane.OK_OPTION);
-				System.out.println("Illegal access to code from line " + model.getPC()); // just for debugging
-				System.out.println("Exception message: " + e.getMessage());
-				// YOU HAVE TO FILL OUT ALL THESE CATCH BLOCKSthey all have different JOptionPane
-				// code with different messages appropriate to the exception
-			} catch(NullPointerException e) {
-				System.out.println("Illegal access to code from line " + model.getPC()); // just for debugging
-				System.out.println("Exception message: " + e.getMessage());
-			} catch(ParityCheckException e) {
-				JOptionPane.showMessageDialog(frame, "Illegal Format: Integer must have even amount of 1's " + model.getPC() + "\n" + "Exception message: " + e.getMessage(),
-						"Run time error", JOptionPane.OK_OPTION);
-				System.out.println("Illegal access to code from line " + model.getPC()); // just for debugging
-				System.out.println("Exception message: " + e.getMessage());
-			} catch(IllegalInstructionException e) {
-				JOptionPane.showMessageDialog(frame, "Illegal format for instruction " + model.getPC() + "\n" + "Exception message: " + e.getMessage(),
-						"Run time error", JOptionPane.OK_OPTION);
-				System.out.println("Illegal access to code from line " + model.getPC()); // just for debugging
-				System.out.println("Exception message: " + e.getMessage());
-			} catch(IllegalArgumentException e) {
-				JOptionPane.showMessageDialog(frame, "Illegal argument has been passed " + model.getPC() + "\n" + "Exception message: " + e.getMessage(),
-						"Run time error", JOptionPane.OK_OPTION);
-				System.out.println("Illegal access to code from line " + model.getPC()); // just for debugging
-				System.out.println("Exception message: " + e.getMessage());
-			} catch(DivideByZeroException e) {
-				JOptionPane.showMessageDialog(frame, "Cannot divide by zero " + model.getPC() + "\n" + "Exception message: " + e.getMessage(),
-						"Run time error", JOptionPane.OK_OPTION);
-				System.out.println("Illegal access to code from line " + model.getPC()); // just for debugging
-				System.out.println("Exception message: " + e.getMessage());
-			}
+			if (!run(Long.MAX_VALUE)) break;
 		}
 		notify("");
 	}
@@ -232,6 +208,7 @@ public class ViewMediator {
 		memoryViewPanel1.update(str);
 		memoryViewPanel2.update(str);
 		memoryViewPanel3.update(str);
+		model.resetDirtyPages();
 		controlPanel.update();
 		processorPanel.update();
 	}